@@ -1,46 +1,112 @@
 #type vertex
 #version 330 core
+// Fed by RenderBatch in either per-vertex VertexFormat; compact colors and texcoords arrive
+// as normalized integers and are converted to floats by the vertex fetch.
+// With INSTANCED defined, each sprite is one instance drawn over a unit quad.
+#ifdef INSTANCED
+layout(location = 0) in vec2 aCorner;
+layout(location = 1) in vec2 aPos;
+layout(location = 2) in vec2 aScale;
+layout(location = 3) in vec4 aColor;
+layout(location = 4) in vec4 aUvRect;
+layout(location = 5) in float aTexId;
+#else
 layout(location = 0) in vec2 aPos;
 layout(location = 1) in vec4 aColor;
 layout(location = 2) in vec2 aTexCoords;
 layout(location = 3) in float aTexId;
+#endif
 
-uniform mat4 uProj;
-uniform mat4 uView;
+// Shared by every shader, filled once per frame from the Camera (see CameraUniforms)
+layout(std140) uniform Camera {
+    mat4 uProj;
+    mat4 uView;
+    mat4 uViewProj;
+};
 
 out vec4 fColor;
 out vec2 fTexCoords;
-out float fTexId;
+flat out float fTexId;
 
 void main() {
     fColor     = aColor;
-    fTexCoords = aTexCoords;
     fTexId     = aTexId;
-    gl_Position = uProj * uView * vec4(aPos, 0.0, 1.0);
+#ifdef INSTANCED
+    fTexCoords = mix(aUvRect.xy, aUvRect.zw, aCorner);
+    gl_Position = uViewProj * vec4(aPos + aCorner * aScale, 0.0, 1.0);
+#else
+    fTexCoords = aTexCoords;
+    gl_Position = uViewProj * vec4(aPos, 0.0, 1.0);
+#endif
 }
 
 #type fragment
 #version 330 core
+// MAX_TEXTURES is defined by RenderBatch from GL_MAX_TEXTURE_IMAGE_UNITS (at most 15).
+// fTexId holds the texture slot in its low 4 bits (0 = untextured) and, with
+// TEXTURE_ARRAYS defined, the array layer above them.
 in vec4  fColor;
 in vec2  fTexCoords;
-in float fTexId;
+flat in float fTexId;
 
-uniform sampler2D uTextures[8];
+#ifdef TEXTURE_ARRAYS
+uniform sampler2DArray uTextures[MAX_TEXTURES];
+#define SAMPLE(slot) texture(uTextures[slot], vec3(fTexCoords, float(layer)))
+#else
+uniform sampler2D uTextures[MAX_TEXTURES];
+#define SAMPLE(slot) texture(uTextures[slot], fTexCoords)
+#endif
 
 out vec4 color;
 
 vec4 getColor() {
-    int id = int(fTexId);
-    switch (id) {
-        case 0:  return fColor;
-        case 1:  return fColor * texture(uTextures[0], fTexCoords);
-        case 2:  return fColor * texture(uTextures[1], fTexCoords);
-        case 3:  return fColor * texture(uTextures[2], fTexCoords);
-        case 4:  return fColor * texture(uTextures[3], fTexCoords);
-        case 5:  return fColor * texture(uTextures[4], fTexCoords);
-        case 6:  return fColor * texture(uTextures[5], fTexCoords);
-        case 7:  return fColor * texture(uTextures[6], fTexCoords);
-        case 8:  return fColor * texture(uTextures[7], fTexCoords);
+    int id    = int(fTexId);
+    int slot  = id & 15;
+    int layer = id >> 4;
+    switch (slot) {
+        case 1:  return fColor * SAMPLE(0);
+#if MAX_TEXTURES > 1
+        case 2:  return fColor * SAMPLE(1);
+#endif
+#if MAX_TEXTURES > 2
+        case 3:  return fColor * SAMPLE(2);
+#endif
+#if MAX_TEXTURES > 3
+        case 4:  return fColor * SAMPLE(3);
+#endif
+#if MAX_TEXTURES > 4
+        case 5:  return fColor * SAMPLE(4);
+#endif
+#if MAX_TEXTURES > 5
+        case 6:  return fColor * SAMPLE(5);
+#endif
+#if MAX_TEXTURES > 6
+        case 7:  return fColor * SAMPLE(6);
+#endif
+#if MAX_TEXTURES > 7
+        case 8:  return fColor * SAMPLE(7);
+#endif
+#if MAX_TEXTURES > 8
+        case 9:  return fColor * SAMPLE(8);
+#endif
+#if MAX_TEXTURES > 9
+        case 10: return fColor * SAMPLE(9);
+#endif
+#if MAX_TEXTURES > 10
+        case 11: return fColor * SAMPLE(10);
+#endif
+#if MAX_TEXTURES > 11
+        case 12: return fColor * SAMPLE(11);
+#endif
+#if MAX_TEXTURES > 12
+        case 13: return fColor * SAMPLE(12);
+#endif
+#if MAX_TEXTURES > 13
+        case 14: return fColor * SAMPLE(13);
+#endif
+#if MAX_TEXTURES > 14
+        case 15: return fColor * SAMPLE(14);
+#endif
         default: return fColor;
     }
 }
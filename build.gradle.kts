@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("application")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 application {
@@ -47,4 +48,68 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Headless run of a scene with frame-time percentiles and a golden-image check, e.g.
+// ./gradlew perfTest --args="0 frames=600 size=640x360". Without a display it needs Mesa's
+// OSMesa (llvmpipe). Reports go to build/perf; add "update" to rewrite the golden image.
+// Engine options check the optional paths against the same image, e.g. --args="0 culling=true textureArrays=true".
+tasks.register<JavaExec>("perfTest") {
+    group = "verification"
+    mainClass.set("engine.PerfHarness")
+    classpath = sourceSets["main"].runtimeClasspath
+    jvmArgs("-ea")
+    args("0")
+}
+
+// Every scene under every option set with a golden image in golden/, plus all rendering paths
+// at once against the default image. A missing image fails the run; ./gradlew perfCheck
+// -PupdateGolden rewrites them (the rendering-paths runs are only compared).
+val perfScenes = listOf(0, 1)
+val perfOptionSets = mapOf(
+    "" to emptyList<String>(),
+    "FixedTimestep" to listOf("fixedTimestep=true"),
+    "SimulationThread" to listOf("simulationThread=true"),
+    "RenderPaths" to listOf("streaming=true", "vertexFormat=COMPACT", "textureArrays=true", "culling=true", "parallelBuild=true")
+)
+val perfCheck = tasks.register("perfCheck") {
+    group = "verification"
+}
+for (scene in perfScenes) {
+    for ((setName, options) in perfOptionSets) {
+        val task = tasks.register<JavaExec>("perfTestScene$scene$setName") {
+            group = "verification"
+            mainClass.set("engine.PerfHarness")
+            classpath = sourceSets["main"].runtimeClasspath
+            jvmArgs("-ea")
+            args(listOf("$scene") + options)
+            if (setName == "RenderPaths") {
+                // Compared with the image the default run may be rewriting
+                mustRunAfter("perfTestScene$scene")
+            } else if (project.hasProperty("updateGolden")) {
+                args("update")
+            }
+        }
+        perfCheck.configure { dependsOn(task) }
+    }
+}
+
+// Bakes every PNG under assets/images into the texture cache AssetPool reads at startup
+tasks.register<JavaExec>("bakeTextures") {
+    group = "build"
+    mainClass.set("render.TextureBaker")
+    classpath = sourceSets["main"].runtimeClasspath
+    args(".cache/textures", "RGBA8", "false", "assets/images")
+}
+
+// Benchmarks in src/jmh/java, run with ./gradlew jmh. They install a headless RenderDevice,
+// so no window or GL context is needed.
+jmh {
+    jmhVersion.set("1.37")
+    // Allocation rate per benchmark; gc.alloc.rate.norm is bytes allocated per operation
+    profilers.add("gc")
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    resultFormat.set("JSON")
+}
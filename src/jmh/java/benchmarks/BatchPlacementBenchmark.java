@@ -0,0 +1,41 @@
+package benchmarks;
+
+import engine.GameObject;
+import org.openjdk.jmh.annotations.*;
+import render.Renderer;
+import render.Texture;
+
+import java.util.concurrent.TimeUnit;
+
+// Renderer.addSpr: finding a batch with room for the sprite's zIndex and texture, or creating
+// and sorting in a new one. Every invocation fills a fresh Renderer.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BatchPlacementBenchmark {
+    private static final int SPRITES = 10_000;
+
+    @Param({"1", "16"})
+    public int zIndices;
+
+    @Param({"1", "64"})
+    public int textures;
+
+    private GameObject[] objects;
+
+    @Setup
+    public void setup() {
+        Fixtures.headless();
+        Texture[] pool = Fixtures.textures(textures, 64);
+        objects = Fixtures.sprites(SPRITES, pool, zIndices);
+    }
+
+    @Benchmark
+    public Renderer addAll() {
+        Renderer renderer = new Renderer();
+        for (GameObject go : objects) {
+            renderer.add(go);
+        }
+        return renderer;
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import engine.GameObject;
+import engine.Transform;
+import org.openjdk.jmh.annotations.*;
+import render.Renderer;
+
+import java.util.concurrent.TimeUnit;
+
+// One simulation step of a scene whose sprites mostly stand still: moving a few transforms
+// (which notifies their SpriteRender and the Renderer), then updating every object
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChangeDetectionBenchmark {
+    private static final int SPRITES = 10_000;
+
+    @Param({"0", "100", "10000"})
+    public int movedPerStep;
+
+    private GameObject[] objects;
+
+    @Setup
+    public void setup() {
+        Fixtures.headless();
+        objects = Fixtures.sprites(SPRITES, Fixtures.textures(1, 64), 1);
+        Renderer renderer = new Renderer();
+        for (GameObject go : objects) {
+            renderer.add(go);
+        }
+    }
+
+    @Benchmark
+    public void step() {
+        Transform.beginStep();
+        for (int i = 0; i < movedPerStep; i++) {
+            objects[i].transform.translate(1.0f, 0.0f);
+        }
+        for (GameObject go : objects) {
+            go.update(1.0f / 60.0f);
+        }
+    }
+}
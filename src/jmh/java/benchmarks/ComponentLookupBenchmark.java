@@ -0,0 +1,39 @@
+package benchmarks;
+
+import components.FontRenderer;
+import components.Sprite;
+import components.SpriteRender;
+import engine.Component;
+import engine.GameObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// GameObject.getComponent for a present type, a missing type and a supertype
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ComponentLookupBenchmark {
+    private GameObject go;
+
+    @Setup
+    public void setup() {
+        go = new GameObject("lookup");
+        go.addComponent(new SpriteRender(new Sprite(null)));
+    }
+
+    @Benchmark
+    public SpriteRender present() {
+        return go.getComponent(SpriteRender.class);
+    }
+
+    @Benchmark
+    public FontRenderer missing() {
+        return go.getComponent(FontRenderer.class);
+    }
+
+    @Benchmark
+    public Component supertype() {
+        return go.getComponent(Component.class);
+    }
+}
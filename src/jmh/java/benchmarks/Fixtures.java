@@ -0,0 +1,40 @@
+package benchmarks;
+
+import components.Sprite;
+import components.SpriteRender;
+import engine.GameObject;
+import engine.Transform;
+import org.joml.Vector2f;
+import render.Renderer;
+import render.Texture;
+
+// Scene content shared by the benchmarks, built without a GL context
+final class Fixtures {
+    private Fixtures() {}
+
+    // Must run before any batch is created
+    static void headless() {
+        Renderer.setDevice(new HeadlessDevice());
+    }
+
+    static Texture[] textures(int count, int size) {
+        Texture[] textures = new Texture[count];
+        for (int i = 0; i < count; i++) {
+            textures[i] = new Texture("bench-" + i, 0, size, size);
+        }
+        return textures;
+    }
+
+    // count started sprites laid out on a 32px grid, cycling through the textures and zIndices
+    static GameObject[] sprites(int count, Texture[] textures, int zIndices) {
+        GameObject[] objects = new GameObject[count];
+        for (int i = 0; i < count; i++) {
+            Transform transform = new Transform(new Vector2f((i % 100) * 32, (i / 100) * 32), new Vector2f(32, 32));
+            GameObject go = new GameObject("sprite" + i, transform, i % zIndices);
+            go.addComponent(new SpriteRender(new Sprite(textures[i % textures.length])));
+            go.start();
+            objects[i] = go;
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,38 @@
+package benchmarks;
+
+import render.QuadIndexBuffer;
+import render.RenderBatch;
+import render.RenderDevice;
+import render.Shader;
+import render.VertexFormat;
+
+// RenderDevice that creates no GL objects. Batches made on it can take sprites and build
+// their vertices, but must never be rendered.
+public class HeadlessDevice implements RenderDevice {
+    // What most desktop drivers report
+    private static final int TEXTURE_IMAGE_UNITS = 16;
+
+    @Override
+    public int maxTextureImageUnits() {
+        return TEXTURE_IMAGE_UNITS;
+    }
+
+    @Override
+    public boolean supportsStreaming(VertexFormat format) {
+        return false;
+    }
+
+    @Override
+    public Shader loadShader(String filePath, String... defines) {
+        return null;
+    }
+
+    @Override
+    public QuadIndexBuffer createQuadIndices(int maxQuads) {
+        return null;
+    }
+
+    @Override
+    public void startBatch(RenderBatch batch, QuadIndexBuffer indices) {
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import components.SpriteRender;
+import engine.GameObject;
+import org.openjdk.jmh.annotations.*;
+import render.RenderBatch;
+import render.Texture;
+
+import java.util.concurrent.TimeUnit;
+
+// Vertex building of one full batch: rewriting every sprite (loadVertexProperties) and the
+// per-frame scan for dirty sprites when only a few, or none, changed. Each benchmark has its
+// own state, so dirtyPerFrame only multiplies the runs of dirtyScan.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderBatchBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    @State(Scope.Thread)
+    public static class FullBatch {
+        RenderBatch batch;
+        SpriteRender[] sprites;
+
+        @Setup
+        public void setup() {
+            Fixtures.headless();
+            Texture[] textures = Fixtures.textures(8, 64);
+            GameObject[] objects = Fixtures.sprites(BATCH_SIZE, textures, 1);
+
+            batch   = new RenderBatch(BATCH_SIZE, 0);
+            sprites = new SpriteRender[BATCH_SIZE];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                sprites[i] = objects[i].getComponent(SpriteRender.class);
+                batch.addSprite(sprites[i]);
+            }
+            batch.buildVertices(1.0f);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class DirtyBatch extends FullBatch {
+        @Param({"0", "10", "100"})
+        public int dirtyPerFrame;
+
+        int next;
+    }
+
+    @Benchmark
+    public void rebuildAll(FullBatch state) {
+        for (SpriteRender sprite : state.sprites) {
+            sprite.markDirty();
+        }
+        state.batch.buildVertices(1.0f);
+    }
+
+    // Spread over the batch, so the dirty range is not just a few neighbouring slots
+    @Benchmark
+    public void dirtyScan(DirtyBatch state) {
+        for (int k = 0; k < state.dirtyPerFrame; k++) {
+            state.sprites[state.next].markDirty();
+            state.next = (state.next + 97) % BATCH_SIZE;
+        }
+        state.batch.buildVertices(1.0f);
+    }
+}
@@ -0,0 +1,25 @@
+package benchmarks;
+
+import components.SpriteSheet;
+import org.openjdk.jmh.annotations.*;
+import render.Texture;
+
+import java.util.concurrent.TimeUnit;
+
+// Slicing a 1024px sheet into 16px sprites
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpriteSheetBenchmark {
+    private Texture texture;
+
+    @Setup
+    public void setup() {
+        texture = new Texture("sheet", 0, 1024, 1024);
+    }
+
+    @Benchmark
+    public SpriteSheet slice() {
+        return new SpriteSheet(texture, 16, 16, 4096, 0);
+    }
+}
@@ -3,6 +3,7 @@ import engine.*;
 public class Main {
     public static void main(String[] args) {
         Window window= Window.get();
+        EngineOptions.fromSystemProperties().applyTo(window);
         window.run();
     }
 }
\ No newline at end of file
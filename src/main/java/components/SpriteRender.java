@@ -4,14 +4,31 @@ import engine.Component;
 import engine.Transform;
 import org.joml.Vector2f;
 import org.joml.Vector4f;
+import render.RenderBatch;
+import render.Renderer;
+import render.SpatialGrid;
 import render.Texture;
 
-public class SpriteRender extends Component {
+public class SpriteRender extends Component implements Transform.Listener {
     private Vector4f color;
     private boolean dirty = true;
+    // Bumped on every visible change; unlike the dirty flag it is never reset, so a reader
+    // that skips some frames can still tell whether anything changed since it last looked
+    private int version = 0;
     private Sprite sprite;
 
-    private Transform lastTransform;
+    // Renderer bookkeeping: who draws this sprite and from which batch slot
+    private Renderer renderer;
+    private RenderBatch batch;
+    private int batchIndex = -1;
+    private boolean interpolating = false;
+    // Snapshot mode, GL thread only: version last written to the batch and last snapshot seen in
+    private int builtVersion = -1;
+    private int seenStamp = 0;
+    // Culling grid this sprite is listed in, and the cell rectangle {minX, minY, maxX, maxY}
+    // it covers there; rewritten in place whenever the sprite moves
+    private SpatialGrid grid;
+    private final int[] gridCells = new int[4];
 
     public SpriteRender(Vector4f color) {
         this.color = color;
@@ -26,14 +43,29 @@ public class SpriteRender extends Component {
 
     @Override
     public void start() {
-        this.lastTransform= gameObject.transform.copy();
+        gameObject.transform.addListener(this);
     }
 
     @Override
     public void update(float dt) {
-        if(!this.lastTransform.equals(this.gameObject.transform)) {
-            this.gameObject.transform.copy(this.lastTransform);
-            dirty= true;
+    }
+
+    // Moving the transform is what makes the sprite dirty; a sprite that stays put costs nothing per frame
+    @Override
+    public void transformChanged(Transform transform) {
+        dirty= true;
+        version++;
+        if(renderer != null) {
+            renderer.spriteMoved(this);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        gameObject.transform.removeListener(this);
+        if(renderer != null) {
+            renderer.remove(this);
+            renderer = null;
         }
     }
 
@@ -52,6 +84,13 @@ public class SpriteRender extends Component {
     public void setClean() {
         this.dirty = false;
     }
+    public void markDirty() {
+        this.dirty = true;
+    }
+
+    public int getVersion() {
+        return version;
+    }
 
     public Vector4f getColor() {
         return color;
@@ -60,15 +99,77 @@ public class SpriteRender extends Component {
     public void setSprite(Sprite sprite) {
         this.sprite = sprite;
         this.dirty= true;
+        this.version++;
     }
 
     public void setColor(Vector4f color) {
         if(!this.color.equals(color)) {
             this.dirty= true;
+            this.version++;
             this.color.set(color);
         }
     }
 
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    public void setRenderer(Renderer renderer) {
+        this.renderer = renderer;
+    }
+
+    public RenderBatch getBatch() {
+        return batch;
+    }
+
+    public int getBatchIndex() {
+        return batchIndex;
+    }
+
+    // Whether the renderer is re-drawing it every frame between simulation steps
+    public boolean isInterpolating() {
+        return interpolating;
+    }
+
+    public void setInterpolating(boolean interpolating) {
+        this.interpolating = interpolating;
+    }
+
+    public int getBuiltVersion() {
+        return builtVersion;
+    }
+
+    public void setBuiltVersion(int builtVersion) {
+        this.builtVersion = builtVersion;
+    }
+
+    public int getSeenStamp() {
+        return seenStamp;
+    }
+
+    public void setSeenStamp(int seenStamp) {
+        this.seenStamp = seenStamp;
+    }
+
+    public SpatialGrid getGrid() {
+        return grid;
+    }
+
+    public void setGrid(SpatialGrid grid) {
+        this.grid = grid;
+    }
+
+    public int[] getGridCells() {
+        return gridCells;
+    }
+
+    // Called by RenderBatch when the sprite takes or changes a slot
+    public void setBatch(RenderBatch batch, int batchIndex) {
+        this.batch = batch;
+        this.batchIndex = batchIndex;
+        this.builtVersion = -1;
+    }
+
 
 
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+package components;
+
+import org.joml.Vector2f;
+import org.lwjgl.BufferUtils;
+import render.Texture;
+import util.SkylinePacker;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.GL_MAX_TEXTURE_SIZE;
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.stb.STBImage.*;
+
+// Packs many images into as few textures ("pages") as possible, so sprites from different
+// files can share a texture and end up in the same RenderBatch
+public class TextureAtlas {
+    private static class Image {
+        String path;
+        int width, height;
+        ByteBuffer pixels;
+        int page, x, y;
+    }
+
+    private final List<Texture> pages;
+    private final Map<String, Sprite> sprites;
+
+    // Every image is surrounded by padding pixels that repeat its edge, so filtering
+    // never samples a neighbour. Pages are at most pageSize square (and never above
+    // GL_MAX_TEXTURE_SIZE), then shrunk to the power of two that fits their contents.
+    public TextureAtlas(List<String> imagePaths, int pageSize, int padding) {
+        this.pages   = new ArrayList<>();
+        this.sprites = new HashMap<>();
+
+        pageSize = Math.min(pageSize, glGetInteger(GL_MAX_TEXTURE_SIZE));
+
+        List<Image> images = new ArrayList<>();
+        for (String path : imagePaths) {
+            images.add(load(path));
+        }
+
+        // Tallest first packs noticeably tighter with a skyline
+        List<Image> order = new ArrayList<>(images);
+        order.sort((a, b) -> Integer.compare(b.height, a.height));
+
+        List<SkylinePacker> packers = new ArrayList<>();
+        for (Image image : order) {
+            int w = image.width + 2 * padding;
+            int h = image.height + 2 * padding;
+            if (w > pageSize || h > pageSize) {
+                throw new IllegalArgumentException(String.format(
+                        "Image '%s' (%dx%d) does not fit in a %d px atlas page",
+                        image.path, image.width, image.height, pageSize));
+            }
+
+            int[] pos = null;
+            for (int p = 0; p < packers.size() && pos == null; p++) {
+                pos = packers.get(p).insert(w, h);
+                image.page = p;
+            }
+            if (pos == null) {
+                packers.add(new SkylinePacker(pageSize, pageSize));
+                image.page = packers.size() - 1;
+                pos = packers.get(image.page).insert(w, h);
+            }
+            image.x = pos[0] + padding;
+            image.y = pos[1] + padding;
+        }
+
+        for (int p = 0; p < packers.size(); p++) {
+            int pageWidth  = 1;
+            int pageHeight = Math.min(pageSize, nextPowerOfTwo(packers.get(p).getUsedHeight()));
+            for (Image image : images) {
+                if (image.page == p) {
+                    pageWidth = Math.max(pageWidth, Math.min(pageSize, nextPowerOfTwo(image.x + image.width + padding)));
+                }
+            }
+
+            ByteBuffer pagePixels = BufferUtils.createByteBuffer(pageWidth * pageHeight * 4);
+            for (Image image : images) {
+                if (image.page == p) {
+                    blit(image, pagePixels, pageWidth, padding);
+                }
+            }
+            pages.add(new Texture("atlas-page-" + p, pageWidth, pageHeight, pagePixels));
+        }
+
+        for (Image image : images) {
+            Texture page = pages.get(image.page);
+            float leftX   = image.x / (float) page.getWidth();
+            float rightX  = (image.x + image.width) / (float) page.getWidth();
+            float bottomY = image.y / (float) page.getHeight();
+            float topY    = (image.y + image.height) / (float) page.getHeight();
+
+            // Same corner order as a Sprite covering a whole texture
+            Vector2f[] texCoords = {
+                    new Vector2f(rightX, topY),
+                    new Vector2f(rightX, bottomY),
+                    new Vector2f(leftX, bottomY),
+                    new Vector2f(leftX, topY)
+            };
+            sprites.put(image.path, new Sprite(page, texCoords));
+
+            stbi_image_free(image.pixels);
+            image.pixels = null;
+        }
+    }
+
+    // Decodes an image to RGBA, flipped the same way Texture loads it
+    private static Image load(String path) {
+        IntBuffer width    = BufferUtils.createIntBuffer(1);
+        IntBuffer height   = BufferUtils.createIntBuffer(1);
+        IntBuffer channels = BufferUtils.createIntBuffer(1);
+
+        stbi_set_flip_vertically_on_load(true);
+        ByteBuffer pixels = stbi_load(path, width, height, channels, 4);
+        if (pixels == null) {
+            throw new IllegalArgumentException("Error: (TextureAtlas) Could not load image '" + path + "'");
+        }
+
+        Image image  = new Image();
+        image.path   = path;
+        image.width  = width.get(0);
+        image.height = height.get(0);
+        image.pixels = pixels;
+        return image;
+    }
+
+    // Copies the image into the page, extending its edge pixels over the padding
+    private static void blit(Image image, ByteBuffer page, int pageWidth, int padding) {
+        for (int dy = -padding; dy < image.height + padding; dy++) {
+            int srcY = Math.max(0, Math.min(image.height - 1, dy));
+            for (int dx = -padding; dx < image.width + padding; dx++) {
+                int srcX  = Math.max(0, Math.min(image.width - 1, dx));
+                int pixel = image.pixels.getInt((srcY * image.width + srcX) * 4);
+                page.putInt(((image.y + dy) * pageWidth + image.x + dx) * 4, pixel);
+            }
+        }
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    // Sprite for one of the packed images, by the path it was added with
+    public Sprite getSprite(String imagePath) {
+        Sprite sprite = sprites.get(imagePath);
+        if (sprite == null) {
+            throw new IllegalArgumentException("Image '" + imagePath + "' is not part of this atlas");
+        }
+        return sprite;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    public Texture getPage(int index) {
+        return pages.get(index);
+    }
+}
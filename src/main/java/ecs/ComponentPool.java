@@ -0,0 +1,44 @@
+package ecs;
+
+import java.util.Arrays;
+
+// Dense storage for one component type. Components are plain objects here; types that
+// are hot enough to matter get a primitive pool of their own, like TransformPool.
+public class ComponentPool<T> extends SparseSet {
+    private Object[] components;
+
+    public ComponentPool() {
+        this.components = new Object[entities.length];
+    }
+
+    public void add(int entity, T component) {
+        components[insert(entity)] = component;
+    }
+
+    // The entity's component, or null
+    public T get(int entity) {
+        int slot = slotOf(entity);
+        return slot >= 0 ? getAt(slot) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getAt(int slot) {
+        return (T) components[slot];
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        super.grow(capacity);
+        components = Arrays.copyOf(components, capacity);
+    }
+
+    @Override
+    protected void move(int from, int to) {
+        components[to] = components[from];
+    }
+
+    @Override
+    protected void clear(int slot) {
+        components[slot] = null;
+    }
+}
@@ -0,0 +1,6 @@
+package ecs;
+
+// Logic that runs once per frame over whole pools, instead of per object
+public interface EntitySystem {
+    void update(World world, float dt);
+}
@@ -0,0 +1,86 @@
+package ecs;
+
+import java.util.Arrays;
+
+// Maps entities to densely packed slots. Removing an entity moves the last slot into the
+// hole, so slots [0, size) never have gaps and subclasses can keep their data in plain
+// arrays that systems walk front to back.
+public abstract class SparseSet {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] sparse;     // Entity index -> slot + 1, 0 when absent
+    protected int[] entities; // Slot -> entity
+    protected int size;
+
+    protected SparseSet() {
+        this.sparse   = new int[INITIAL_CAPACITY];
+        this.entities = new int[INITIAL_CAPACITY];
+        this.size     = 0;
+    }
+
+    public boolean has(int entity) {
+        return slotOf(entity) >= 0;
+    }
+
+    // Slot holding the entity's data, or -1. A stale id of a recycled index does not match.
+    public int slotOf(int entity) {
+        int index = World.index(entity);
+        if (index >= sparse.length) {
+            return -1;
+        }
+        int slot = sparse[index] - 1;
+        return slot >= 0 && entities[slot] == entity ? slot : -1;
+    }
+
+    // Appends a slot for the entity and returns it
+    protected int insert(int entity) {
+        assert !has(entity) : "Error: (SparseSet) Entity " + entity + " is already in the set";
+        if (size == entities.length) {
+            grow(2 * size);
+        }
+        int index = World.index(entity);
+        if (index >= sparse.length) {
+            sparse = Arrays.copyOf(sparse, Math.max(index + 1, 2 * sparse.length));
+        }
+        sparse[index]  = size + 1;
+        entities[size] = entity;
+        return size++;
+    }
+
+    public boolean remove(int entity) {
+        int slot = slotOf(entity);
+        if (slot < 0) {
+            return false;
+        }
+
+        int last = size - 1;
+        if (slot != last) {
+            move(last, slot);
+            entities[slot] = entities[last];
+            sparse[World.index(entities[slot])] = slot + 1;
+        }
+        clear(last);
+        sparse[World.index(entity)] = 0;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int entityAt(int slot) {
+        return entities[slot];
+    }
+
+    // Resizes the per-slot arrays; subclasses grow their own and call super
+    protected void grow(int capacity) {
+        entities = Arrays.copyOf(entities, capacity);
+    }
+
+    // Copies the data of slot from into slot to
+    protected abstract void move(int from, int to);
+
+    // Drops references held by a slot that is no longer used
+    protected void clear(int slot) {}
+}
@@ -0,0 +1,44 @@
+package ecs;
+
+import java.util.Arrays;
+
+// Position and scale of every entity that has them, as one primitive array per field.
+// A system moving 100k entities reads and writes four contiguous float arrays instead of
+// following a GameObject -> Transform -> Vector2f chain per entity.
+public class TransformPool extends SparseSet {
+    public float[] posX, posY;
+    public float[] scaleX, scaleY;
+
+    public TransformPool() {
+        int capacity = entities.length;
+        this.posX   = new float[capacity];
+        this.posY   = new float[capacity];
+        this.scaleX = new float[capacity];
+        this.scaleY = new float[capacity];
+    }
+
+    public void add(int entity, float x, float y, float width, float height) {
+        int slot = insert(entity);
+        posX[slot]   = x;
+        posY[slot]   = y;
+        scaleX[slot] = width;
+        scaleY[slot] = height;
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        super.grow(capacity);
+        posX   = Arrays.copyOf(posX, capacity);
+        posY   = Arrays.copyOf(posY, capacity);
+        scaleX = Arrays.copyOf(scaleX, capacity);
+        scaleY = Arrays.copyOf(scaleY, capacity);
+    }
+
+    @Override
+    protected void move(int from, int to) {
+        posX[to]   = posX[from];
+        posY[to]   = posY[from];
+        scaleX[to] = scaleX[from];
+        scaleY[to] = scaleY[from];
+    }
+}
@@ -0,0 +1,97 @@
+package ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Entities, their component pools and the systems that process them. An entity is just an
+// int: the low INDEX_BITS are a slot index, reused after destroyEntity, and the bits above
+// are a generation that changes on every reuse, so stale ids stop matching anything.
+public class World {
+    private static final int INDEX_BITS = 24;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int GENERATION_MASK = 0xFF;
+
+    private int[] generations = new int[64];
+    private int[] freeIndices = new int[64];
+    private int freeCount = 0;
+    private int nextIndex = 0;
+
+    private final TransformPool transforms = new TransformPool();
+    private final Map<Class<?>, ComponentPool<?>> pools = new HashMap<>();
+    private final List<SparseSet> allPools = new ArrayList<>();
+    private final List<EntitySystem> systems = new ArrayList<>();
+
+    public World() {
+        allPools.add(transforms);
+    }
+
+    public static int index(int entity) {
+        return entity & INDEX_MASK;
+    }
+
+    public int createEntity() {
+        int index;
+        if (freeCount > 0) {
+            index = freeIndices[--freeCount];
+        } else {
+            index = nextIndex++;
+            assert index <= INDEX_MASK : "Error: (World) Too many entities";
+            if (index == generations.length) {
+                generations = Arrays.copyOf(generations, 2 * index);
+            }
+        }
+        return index | (generations[index] << INDEX_BITS);
+    }
+
+    // Removes the entity from every pool and frees its index for reuse
+    public void destroyEntity(int entity) {
+        if (!isAlive(entity)) {
+            return;
+        }
+        for (int i = 0; i < allPools.size(); i++) {
+            allPools.get(i).remove(entity);
+        }
+
+        int index = index(entity);
+        generations[index] = (generations[index] + 1) & GENERATION_MASK;
+        if (freeCount == freeIndices.length) {
+            freeIndices = Arrays.copyOf(freeIndices, 2 * freeCount);
+        }
+        freeIndices[freeCount++] = index;
+    }
+
+    public boolean isAlive(int entity) {
+        int index = index(entity);
+        return index < nextIndex && generations[index] == (entity >>> INDEX_BITS);
+    }
+
+    public TransformPool transforms() {
+        return transforms;
+    }
+
+    // The pool for the component type, created on first use
+    @SuppressWarnings("unchecked")
+    public <T> ComponentPool<T> pool(Class<T> type) {
+        ComponentPool<?> pool = pools.get(type);
+        if (pool == null) {
+            pool = new ComponentPool<T>();
+            pools.put(type, pool);
+            allPools.add(pool);
+        }
+        return (ComponentPool<T>) pool;
+    }
+
+    // Systems run in the order they were added
+    public void addSystem(EntitySystem system) {
+        systems.add(system);
+    }
+
+    public void update(float dt) {
+        for (int i = 0; i < systems.size(); i++) {
+            systems.get(i).update(this, dt);
+        }
+    }
+}
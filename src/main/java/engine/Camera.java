@@ -2,12 +2,20 @@ package engine;
 
 import org.joml.Matrix4f;
 import org.joml.Vector2f;
-import org.joml.Vector3f;
 
 public class Camera {
-    private Matrix4f projectionMatrix; // Projection matrix
-    private Matrix4f viewMatrix;       // View matrix
-    private Vector2f position;         // Camera position
+    private Matrix4f projectionMatrix;     // Projection matrix
+    private Matrix4f viewMatrix;           // View matrix
+    private Matrix4f viewProjectionMatrix; // projection * view
+    private Vector2f position;             // Camera position
+    private Vector2f projectionSize = new Vector2f(32.0f * 40.0f, 32.0f * 21.0f); // Visible area in world units
+
+    // Values the cached matrices were computed from. position and projectionSize are handed
+    // out mutable, so changes are detected by comparing against these (NaN = never computed).
+    private final Vector2f viewPosition = new Vector2f(Float.NaN, Float.NaN);
+    private final Vector2f projectedSize = new Vector2f(Float.NaN, Float.NaN);
+    private int version = 0;         // Bumped whenever the view or projection changes
+    private int combinedVersion = -1; // Version viewProjectionMatrix was computed for
 
 
     //Creates the camera at the given position
@@ -15,33 +23,83 @@ public class Camera {
         this.position = position;
         this.projectionMatrix = new Matrix4f();
         this.viewMatrix = new Matrix4f();
+        this.viewProjectionMatrix = new Matrix4f();
         adjustProjection();
     }
 
     //Sets up the orthographic projection (40x21 tiles of 32px).
     public void adjustProjection() {
-        projectionMatrix.identity();
-        projectionMatrix.ortho(0.0f, 32.0f * 40.0f, 0.0f, 32.0f * 21.0f, 0.0f, 100.0f);
+        projectionMatrix.setOrtho(0.0f, projectionSize.x, 0.0f, projectionSize.y, 0.0f, 100.0f);
+        projectedSize.set(projectionSize);
+        version++;
     }
 
+    //Looks down -z from 20 units in front of the camera's position.
+    private void adjustView() {
+        viewMatrix.setLookAt(
+                position.x, position.y, 20.0f,  // Camera position
+                position.x, position.y, 19.0f,  // Target
+                0.0f, 1.0f, 0.0f                // Up
+        );
+        viewPosition.set(position);
+        version++;
+    }
+
+    //Recomputes whichever matrices are out of date; does nothing while the camera stays put.
+    private void update() {
+        if (projectionSize.x != projectedSize.x || projectionSize.y != projectedSize.y) {
+            adjustProjection();
+        }
+        if (position.x != viewPosition.x || position.y != viewPosition.y) {
+            adjustView();
+        }
+        if (combinedVersion != version) {
+            projectionMatrix.mul(viewMatrix, viewProjectionMatrix);
+            combinedVersion = version;
+        }
+    }
 
     //Returns the view matrix from the camera's position.
     public Matrix4f getViewMatrix() {
-        Vector3f cameraFront = new Vector3f(0.0f, 0.0f, -1.0f); // Direction forward
-        Vector3f cameraUp = new Vector3f(0.0f, 1.0f, 0.0f);      // Up direction
-
-        viewMatrix.identity();
-        viewMatrix.lookAt(
-                new Vector3f(position.x, position.y, 20.0f),              // Camera position
-                cameraFront.add(position.x, position.y, 0.0f),            // Target
-                cameraUp                                                  // Up
-        );
-
+        update();
         return this.viewMatrix;
     }
 
     //Returns the projection matrix.
     public Matrix4f getProjectionMatrix() {
+        update();
         return this.projectionMatrix;
     }
+
+    //Returns projection * view.
+    public Matrix4f getViewProjectionMatrix() {
+        update();
+        return this.viewProjectionMatrix;
+    }
+
+    //Returns a counter that changes whenever any of the matrices does.
+    public int getVersion() {
+        update();
+        return this.version;
+    }
+
+    //Returns the camera position (bottom-left corner of the visible area).
+    public Vector2f getPosition() {
+        return this.position;
+    }
+
+    //Moves the camera; the view is recomputed on next use.
+    public void setPosition(float x, float y) {
+        this.position.set(x, y);
+    }
+
+    //Returns the size of the visible area in world units.
+    public Vector2f getProjectionSize() {
+        return this.projectionSize;
+    }
+
+    //Resizes the visible area; the projection is recomputed on next use.
+    public void setProjectionSize(float width, float height) {
+        this.projectionSize.set(width, height);
+    }
 }
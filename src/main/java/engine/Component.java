@@ -7,4 +7,7 @@ public abstract class Component {
     public void start(){};
 
     public abstract void update(float dt);
+
+    // Called when the component is removed from its GameObject or the object is destroyed
+    public void destroy(){};
 }
@@ -0,0 +1,54 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Small dense ids for component classes, so GameObject can index its components with an
+// array instead of scanning them. Each class also caches the ids of every type it can be
+// looked up as (itself, its superclasses and interfaces), resolved once per class.
+final class ComponentTypes {
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private static final ClassValue<Integer> IDS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return nextId.getAndIncrement();
+        }
+    };
+
+    private static final ClassValue<int[]> LOOKUP_IDS = new ClassValue<>() {
+        @Override
+        protected int[] computeValue(Class<?> type) {
+            List<Class<?>> types = new ArrayList<>();
+            collect(type, types);
+            int[] ids = new int[types.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = id(types.get(i));
+            }
+            return ids;
+        }
+    };
+
+    private ComponentTypes() {}
+
+    static int id(Class<?> type) {
+        return IDS.get(type);
+    }
+
+    // Ids of every type a component of this concrete class matches in getComponent
+    static int[] lookupIds(Class<?> type) {
+        return LOOKUP_IDS.get(type);
+    }
+
+    private static void collect(Class<?> type, List<Class<?>> types) {
+        if (type == null || type == Object.class || types.contains(type)) {
+            return;
+        }
+        types.add(type);
+        collect(type.getSuperclass(), types);
+        for (Class<?> iface : type.getInterfaces()) {
+            collect(iface, types);
+        }
+    }
+}
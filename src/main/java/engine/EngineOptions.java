@@ -0,0 +1,105 @@
+package engine;
+
+import render.Renderer;
+import render.VertexFormat;
+
+import java.util.Locale;
+
+// The optional rendering and timing paths, all off by default, set by name so the game and the
+// perf harness can switch them from the command line:
+//   -Dengine.<name>=<value>   (Main, PerfHarness)
+//   <name>=<value>            (PerfHarness arguments)
+// Names: streaming, vertexFormat (STANDARD|COMPACT|INSTANCED), textureArrays, culling,
+// parallelBuild, fixedTimestep, simulationThread.
+public class EngineOptions {
+    private static final String[] NAMES= {
+            "streaming", "vertexFormat", "textureArrays", "culling", "parallelBuild", "fixedTimestep", "simulationThread"
+    };
+
+    private boolean streaming= false;
+    private VertexFormat vertexFormat= VertexFormat.STANDARD;
+    private boolean textureArrays= false;
+    private boolean culling= false;
+    private boolean parallelBuild= false;
+    private boolean fixedTimestep= false;
+    private boolean simulationThread= false;
+
+    public static EngineOptions fromSystemProperties(){
+        EngineOptions options= new EngineOptions();
+        for(String name : NAMES){
+            String value= System.getProperty("engine." + name);
+            if(value != null){
+                options.set(name, value);
+            }
+        }
+        return options;
+    }
+
+    // Takes a name=value argument; false when it names no option
+    public boolean parse(String arg){
+        int split= arg.indexOf('=');
+        return split > 0 && set(arg.substring(0, split), arg.substring(split + 1));
+    }
+
+    private boolean set(String name, String value){
+        switch (name){
+            case "streaming":        streaming= Boolean.parseBoolean(value); return true;
+            case "vertexFormat":     vertexFormat= VertexFormat.valueOf(value.toUpperCase(Locale.ROOT)); return true;
+            case "textureArrays":    textureArrays= Boolean.parseBoolean(value); return true;
+            case "culling":          culling= Boolean.parseBoolean(value); return true;
+            case "parallelBuild":    parallelBuild= Boolean.parseBoolean(value); return true;
+            case "fixedTimestep":    fixedTimestep= Boolean.parseBoolean(value); return true;
+            case "simulationThread": simulationThread= Boolean.parseBoolean(value); return true;
+            default:                 return false;
+        }
+    }
+
+    // Has to be called before the window's init(), so the first scene's renderer gets the options too
+    public void applyTo(Window window){
+        window.setFixedTimestep(fixedTimestep);
+        window.setSimulationThread(simulationThread);
+        window.setRendererSetup(this::applyTo);
+    }
+
+    private void applyTo(Renderer renderer){
+        renderer.setStreaming(streaming);
+        renderer.setVertexFormat(vertexFormat);
+        renderer.setTextureArrays(textureArrays);
+        renderer.setCulling(culling);
+        renderer.setParallelBuild(parallelBuild);
+    }
+
+    // The options that differ from the defaults, e.g. "culling=true vertexFormat=COMPACT"
+    public String describe(){
+        EngineOptions defaults= new EngineOptions();
+        StringBuilder sb= new StringBuilder();
+        append(sb, "streaming", streaming, defaults.streaming);
+        append(sb, "vertexFormat", vertexFormat, defaults.vertexFormat);
+        append(sb, "textureArrays", textureArrays, defaults.textureArrays);
+        append(sb, "culling", culling, defaults.culling);
+        append(sb, "parallelBuild", parallelBuild, defaults.parallelBuild);
+        append(sb, "fixedTimestep", fixedTimestep, defaults.fixedTimestep);
+        append(sb, "simulationThread", simulationThread, defaults.simulationThread);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, Object value, Object defaultValue){
+        if(!value.equals(defaultValue)){
+            if(sb.length() > 0){
+                sb.append(' ');
+            }
+            sb.append(name).append('=').append(value);
+        }
+    }
+
+    // Whether any of the rendering paths is switched on; those draw the same frame as the default path
+    public boolean changesRendering(){
+        EngineOptions defaults= new EngineOptions();
+        return streaming != defaults.streaming || vertexFormat != defaults.vertexFormat
+                || textureArrays != defaults.textureArrays || culling != defaults.culling
+                || parallelBuild != defaults.parallelBuild;
+    }
+
+    public boolean isFixedTimestep()    { return fixedTimestep; }
+    public boolean isSimulationThread() { return simulationThread; }
+}
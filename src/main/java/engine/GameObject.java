@@ -1,12 +1,15 @@
 package engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class GameObject {
 
     private String name;
     private List<Component> components;
+    // Components by ComponentTypes id, filled for every type each one can be looked up as
+    private Component[] byType= new Component[8];
     public Transform transform;
     private int zIndex;
 
@@ -25,35 +28,68 @@ public class GameObject {
     }
 
     public <T extends Component> T getComponent(Class<T> componentClass){
-        for(Component c : components){
-            if(componentClass.isAssignableFrom(c.getClass())){
-                try {
-                    return componentClass.cast(c);
-                }catch (ClassCastException e){
-                    e.printStackTrace();
-                    assert false: "Error: Casting component";
-                }
-            }
+        int id= ComponentTypes.id(componentClass);
+        if(id >= byType.length){
+            return null;
         }
-
-        return null;
+        return componentClass.cast(byType[id]);
     }
 
     public <T extends Component> void  removeComponent(Class<T> componentClass){
-        for(int i= 0; i < components.size(); i++){
-            Component c= components.get(i);
-            if(componentClass.isAssignableFrom(c.getClass())){
-                components.remove(i);
-                return;
-            }
+        Component c= getComponent(componentClass);
+        if(c == null){
+            return;
         }
+        components.remove(c);
+        unindex(c);
+        c.destroy();
     }
 
     public void addComponent(Component c){
         this.components.add(c);
+        index(c);
         c.gameObject= this;
     }
 
+    // Files the component under each type it can be looked up as. Like the linear scan this
+    // replaced, the first component added wins when several match.
+    private void index(Component c){
+        for(int id : ComponentTypes.lookupIds(c.getClass())){
+            if(id >= byType.length){
+                byType= Arrays.copyOf(byType, Math.max(id + 1, 2 * byType.length));
+            }
+            if(byType[id] == null){
+                byType[id]= c;
+            }
+        }
+    }
+
+    // Hands the slots c held to the next remaining component matching them, if any
+    private void unindex(Component c){
+        for(int id : ComponentTypes.lookupIds(c.getClass())){
+            if(byType[id] != c){
+                continue;
+            }
+            byType[id]= null;
+            for(int i= 0; i < components.size(); i++){
+                Component other= components.get(i);
+                if(contains(ComponentTypes.lookupIds(other.getClass()), id)){
+                    byType[id]= other;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean contains(int[] ids, int id){
+        for(int i : ids){
+            if(i == id){
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void update(float dt){
         for(int i= 0; i < components.size(); i++){
             components.get(i).update(dt);
@@ -66,6 +102,12 @@ public class GameObject {
         }
     }
 
+    public void destroy(){
+        for(int i= 0; i < components.size(); i++){
+            components.get(i).destroy();
+        }
+    }
+
     public int getZIndex(){
         return this.zIndex;
     }
@@ -7,10 +7,13 @@ import imgui.ImGuiStyle;
 import imgui.flag.ImGuiConfigFlags;
 import imgui.gl3.ImGuiImplGl3;
 import imgui.glfw.ImGuiImplGlfw;
+import render.GLState;
+import util.Profiler;
 
 public class ImGuiLayer {
     private final ImGuiImplGlfw imGuiImplGlfw;
     private final ImGuiImplGl3 imGuiImplGl3;
+    private final ProfilerOverlay profilerOverlay = new ProfilerOverlay();
 
     public ImGuiLayer() {
         imGuiImplGlfw = new ImGuiImplGlfw();
@@ -42,7 +45,13 @@ public class ImGuiLayer {
     }
 
     public void end() {
-        ImGui.endFrame();
+        if (Profiler.isEnabled()) {
+            profilerOverlay.draw();
+        }
+        ImGui.render();
+        imGuiImplGl3.renderDrawData(ImGui.getDrawData());
+        // The backend binds its own program, VAO and font texture
+        GLState.invalidate();
     }
 
     public void destroy() {
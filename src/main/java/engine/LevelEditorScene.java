@@ -46,12 +46,10 @@ public class LevelEditorScene extends Scene {
             obj1.getComponent(SpriteRender.class).setSprite(sprites.getSprite(spriteIndex));
         }
 
-        obj1.transform.position.x += 10 * dt;
+        obj1.transform.translate(10 * dt, 0);
 
         for (GameObject go : this.gameObjects) {
             go.update(dt);
         }
-
-        this.renderer.render();
     }
 }
@@ -0,0 +1,226 @@
+package engine;
+
+import org.lwjgl.BufferUtils;
+import render.Framebuffer;
+import render.RenderStats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.lwjgl.opengl.GL11.glFinish;
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.stb.STBImageWrite.stbi_flip_vertically_on_write;
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+
+// Runs a scene headless for a fixed number of frames of exactly 1/60 s and reports frame-time
+// percentiles, draw calls and bytes uploaded per frame. The last frame is compared with a golden
+// PNG, so changes that alter the output are caught along with those that slow it down.
+// Exits with status 1 when the frame does not match or there is no golden image to compare
+// with, for CI. Golden images are created on a trusted build by running with update and
+// committing the PNG, e.g.
+//   ./gradlew perfCheck -PupdateGolden   (writes golden/scene<N>_640x360[_<timing>].png)
+//
+//   PerfHarness <scene> [frames=600] [warmup=60] [size=640x360] [golden=golden] [out=build/perf] [update]
+//               [<EngineOptions name>=<value>...]
+//
+// update writes the frame as the new golden image instead of comparing. Engine options (also
+// read from -Dengine.<name>) switch on the optional rendering paths; those only change how the
+// frame is drawn, so they are checked against the default path's golden image and cannot
+// update it. The fixed timestep and simulation thread step the scene differently and have
+// golden images of their own.
+public class PerfHarness {
+    private static final float FRAME_DT = 1.0f / 60.0f;
+    // A pixel differs when any channel is off by more than this; drivers round blending differently
+    private static final int CHANNEL_TOLERANCE = 2;
+    // Share of differing pixels still accepted as a match
+    private static final double MAX_MISMATCH = 0.001;
+
+    private PerfHarness() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: PerfHarness <scene> [frames=N] [warmup=N] [size=WxH] [golden=dir] [out=dir] [update]");
+            System.exit(2);
+        }
+
+        int scene  = Integer.parseInt(args[0]);
+        int frames = 600;
+        int warmup = 60;
+        int width  = 640;
+        int height = 360;
+        Path goldenDir = Paths.get("golden");
+        Path outDir    = Paths.get("build", "perf");
+        boolean update = false;
+        EngineOptions options = EngineOptions.fromSystemProperties();
+        for (int i = 1; i < args.length; i++) {
+            String arg   = args[i];
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("frames=")) {
+                frames = Integer.parseInt(value);
+            } else if (arg.startsWith("warmup=")) {
+                warmup = Integer.parseInt(value);
+            } else if (arg.startsWith("size=")) {
+                width  = Integer.parseInt(value.substring(0, value.indexOf('x')));
+                height = Integer.parseInt(value.substring(value.indexOf('x') + 1));
+            } else if (arg.startsWith("golden=")) {
+                goldenDir = Paths.get(value);
+            } else if (arg.startsWith("out=")) {
+                outDir = Paths.get(value);
+            } else if (arg.equals("update")) {
+                update = true;
+            } else if (!options.parse(arg)) {
+                throw new IllegalArgumentException("Unknown argument '" + arg + "'");
+            }
+        }
+        if (update && options.changesRendering()) {
+            // The golden image is the default path's output; an optional path must not redefine it
+            System.err.println("Error: (PerfHarness) update needs the default rendering path, got '" + options.describe() + "'");
+            System.exit(2);
+        }
+
+        Window window = Window.get();
+        options.applyTo(window);
+        window.setHeadless(width, height);
+        window.setStartScene(scene);
+        window.init();
+
+        // Frame i's counters are only rolled over when frame i + 1 begins, so they are read
+        // one iteration late
+        long[] frameNanos    = new long[frames];
+        int[] drawCalls      = new int[frames];
+        long[] bytesUploaded = new long[frames];
+        for (int i = -warmup; i < frames; i++) {
+            long start = System.nanoTime();
+            window.runFrame(FRAME_DT);
+            // Count the GPU's share of the frame too; there is no swap to wait for it
+            glFinish();
+            long end = System.nanoTime();
+
+            if (i >= 0) {
+                frameNanos[i] = end - start;
+            }
+            if (i >= 1) {
+                drawCalls[i - 1]     = RenderStats.getDrawCalls();
+                bytesUploaded[i - 1] = RenderStats.getBytesUploaded();
+            }
+        }
+        RenderStats.beginFrame();
+        drawCalls[frames - 1]     = RenderStats.getDrawCalls();
+        bytesUploaded[frames - 1] = RenderStats.getBytesUploaded();
+
+        Framebuffer framebuffer = window.getFramebuffer();
+        ByteBuffer pixels = framebuffer.readPixels();
+        window.destroy();
+
+        String goldenName = "scene" + scene + "_" + width + "x" + height;
+        if (options.isSimulationThread()) {
+            goldenName += "_simulationThread";
+        } else if (options.isFixedTimestep()) {
+            goldenName += "_fixedTimestep";
+        }
+        // Each set of options gets its own output files
+        String name = "scene" + scene + "_" + width + "x" + height;
+        if (!options.describe().isEmpty()) {
+            name += "_" + options.describe().replace('=', '-').replace(' ', '_');
+        }
+        Files.createDirectories(outDir);
+        writePng(outDir.resolve(name + ".png"), pixels, width, height);
+
+        Path golden = goldenDir.resolve(goldenName + ".png");
+        String result;
+        long mismatched = 0;
+        if (update) {
+            Files.createDirectories(goldenDir);
+            writePng(golden, pixels, width, height);
+            result = "updated";
+        } else if (!Files.exists(golden)) {
+            result = "missing";
+        } else {
+            mismatched = compare(golden, pixels, width, height);
+            result = mismatched <= MAX_MISMATCH * width * height ? "match" : "mismatch";
+        }
+
+        String report = report(name, options.describe(), frames, frameNanos, drawCalls, bytesUploaded, result, mismatched);
+        Files.write(outDir.resolve(name + ".json"), report.getBytes(StandardCharsets.UTF_8));
+        System.out.print(report);
+
+        if (result.equals("missing")) {
+            System.err.println("Error: (PerfHarness) No golden image '" + golden + "'. "
+                    + "Run with 'update' on a trusted build to create it.");
+            System.exit(1);
+        } else if (result.equals("mismatch")) {
+            System.exit(1);
+        }
+    }
+
+    // Pixels are bottom row first, as read from GL; the file is written upright
+    private static void writePng(Path file, ByteBuffer pixels, int width, int height) {
+        stbi_flip_vertically_on_write(true);
+        if (!stbi_write_png(file.toString(), width, height, 4, pixels, 4 * width)) {
+            throw new IllegalStateException("Error: (PerfHarness) Could not write '" + file + "'");
+        }
+    }
+
+    // Number of pixels that differ from the golden image; all of them when the sizes differ
+    private static long compare(Path golden, ByteBuffer pixels, int width, int height) {
+        IntBuffer w = BufferUtils.createIntBuffer(1);
+        IntBuffer h = BufferUtils.createIntBuffer(1);
+        IntBuffer c = BufferUtils.createIntBuffer(1);
+        stbi_set_flip_vertically_on_load(true);
+        ByteBuffer expected = stbi_load(golden.toString(), w, h, c, 4);
+        if (expected == null) {
+            throw new IllegalStateException("Error: (PerfHarness) Could not load golden image '" + golden + "': " + stbi_failure_reason());
+        }
+
+        long mismatched = 0;
+        if (w.get(0) != width || h.get(0) != height) {
+            mismatched = (long) width * height;
+        } else {
+            for (int p = 0; p < width * height; p++) {
+                for (int ch = 0; ch < 4; ch++) {
+                    int a = expected.get(4 * p + ch) & 0xFF;
+                    int b = pixels.get(4 * p + ch) & 0xFF;
+                    if (Math.abs(a - b) > CHANNEL_TOLERANCE) {
+                        mismatched++;
+                        break;
+                    }
+                }
+            }
+        }
+        stbi_image_free(expected);
+        return mismatched;
+    }
+
+    private static String report(String name, String options, int frames, long[] frameNanos, int[] drawCalls, long[] bytesUploaded,
+                                 String result, long mismatched) {
+        long[] sorted = frameNanos.clone();
+        Arrays.sort(sorted);
+        double drawCallsMean = Arrays.stream(drawCalls).average().orElse(0);
+        double uploadMean    = Arrays.stream(bytesUploaded).average().orElse(0);
+
+        return String.format(Locale.ROOT,
+                "{\"scene\":\"%s\",\"options\":\"%s\",\"frames\":%d,"
+                        + "\"frameMs\":{\"p50\":%.3f,\"p95\":%.3f,\"p99\":%.3f,\"max\":%.3f},"
+                        + "\"drawCalls\":{\"mean\":%.1f,\"max\":%d},"
+                        + "\"bytesUploaded\":{\"mean\":%.1f,\"max\":%d},"
+                        + "\"golden\":\"%s\",\"mismatchedPixels\":%d}\n",
+                name, options, frames,
+                percentileMs(sorted, 0.50), percentileMs(sorted, 0.95), percentileMs(sorted, 0.99), sorted[sorted.length - 1] / 1e6,
+                drawCallsMean, Arrays.stream(drawCalls).max().orElse(0),
+                uploadMean, Arrays.stream(bytesUploaded).max().orElse(0),
+                result, mismatched);
+    }
+
+    // Nearest-rank percentile of sorted frame times
+    private static double percentileMs(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(rank, 0)] / 1e6;
+    }
+}
@@ -0,0 +1,75 @@
+package engine;
+
+import imgui.ImGui;
+import imgui.flag.ImGuiCond;
+import imgui.flag.ImGuiWindowFlags;
+import render.RenderStats;
+import util.AssetPool;
+import util.Profiler;
+import util.TextureCache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// ImGui window showing the Profiler's frame-time graph, the time of each zone over the last
+// frames and the renderer counters, with a button to record a Chrome trace
+public class ProfilerOverlay {
+    private static final float GRAPH_HEIGHT = 60.0f;
+    private static final float ZONE_GRAPH_HEIGHT = 24.0f;
+
+    private String lastTrace = null;
+
+    public void draw() {
+        ImGui.setNextWindowPos(10.0f, 10.0f, ImGuiCond.FirstUseEver);
+        ImGui.setNextWindowBgAlpha(0.85f);
+        if (!ImGui.begin("Profiler", ImGuiWindowFlags.AlwaysAutoResize | ImGuiWindowFlags.NoFocusOnAppearing)) {
+            ImGui.end();
+            return;
+        }
+
+        float[] frames = Profiler.getFrameHistoryMs();
+        float last = frames[Profiler.HISTORY - 1];
+        ImGui.plotLines("##frame", frames, Profiler.HISTORY, 0,
+                String.format("frame %.2f ms", last), 0.0f, 33.3f, 320.0f, GRAPH_HEIGHT);
+
+        ImGui.text(String.format("GPU %.2f ms", RenderStats.getGpuNanos() / 1e6));
+        ImGui.text("Draw calls " + RenderStats.getDrawCalls()
+                + "   batches " + RenderStats.getBatchesDrawn()
+                + "   sprites " + RenderStats.getSpritesDrawn());
+        ImGui.text(String.format("Uploaded %.1f KB", RenderStats.getBytesUploaded() / 1024.0));
+        ImGui.text("State changes " + RenderStats.getStateChangesIssued()
+                + " issued, " + RenderStats.getStateChangesSkipped() + " skipped");
+        TextureCache textures = AssetPool.textureCache();
+        ImGui.text(String.format("Textures %d, %.1f / %.0f MB   hits %d, misses %d, evicted %d",
+                textures.size(), textures.getGpuBytes() / 1048576.0, textures.getBudgetBytes() / 1048576.0,
+                textures.getHits(), textures.getMisses(), textures.getEvictions()));
+
+        if (ImGui.collapsingHeader("Zones")) {
+            for (Profiler.Zone zone : Profiler.getZones()) {
+                ImGui.plotLines("##" + zone.getName(), zone.getHistoryMs(), Profiler.HISTORY, 0,
+                        String.format("%s %.3f ms", zone.getName(), zone.getLastMs()), 0.0f, 16.6f, 320.0f, ZONE_GRAPH_HEIGHT);
+            }
+        }
+
+        ImGui.separator();
+        if (!Profiler.isCapturing()) {
+            if (ImGui.button("Record trace")) {
+                Profiler.startCapture();
+            }
+        } else if (ImGui.button("Stop and save trace")) {
+            Path file = Path.of("trace-" + System.currentTimeMillis() + ".json");
+            try {
+                Profiler.stopCapture(file);
+                lastTrace = file.toAbsolutePath().toString();
+            } catch (IOException e) {
+                e.printStackTrace();
+                lastTrace = "failed: " + e.getMessage();
+            }
+        }
+        if (lastTrace != null) {
+            ImGui.text("Last trace: " + lastTrace);
+        }
+
+        ImGui.end();
+    }
+}
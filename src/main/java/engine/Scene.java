@@ -14,7 +14,24 @@ public abstract class Scene {
 
     public Scene() {}
 
+    // Advances the simulation; drawing happens separately in render()
     public abstract void update(float dt);
+
+    // alpha is how far the frame lies between the previous update and the latest one
+    public void render(float alpha) {
+        this.renderer.render(alpha);
+    }
+
+    // With the simulation on its own thread: called there after each round of updates
+    public void captureSnapshot(double time) {
+        this.renderer.captureSnapshot(this.camera, time);
+    }
+
+    // With the simulation on its own thread: called on the GL thread instead of render()
+    public void renderSnapshot(double now, double stepLength) {
+        this.renderer.renderSnapshot(now, stepLength);
+    }
+
     public void imgui() {}
     public void init() {}
 
@@ -36,6 +53,14 @@ public abstract class Scene {
         }
     }
 
+    // Destroys the object and releases what it holds in the renderer. Not safe to call
+    // while iterating gameObjects.
+    public void removeGameObjectFromScene(GameObject go) {
+        if (gameObjects.remove(go)) {
+            go.destroy();
+        }
+    }
+
     public Camera camera() {
         return this.camera;
     }
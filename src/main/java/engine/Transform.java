@@ -1,27 +1,136 @@
 package engine;
 
 import org.joml.Vector2f;
+import org.joml.Vector2fc;
+
+import java.util.Arrays;
 
 public class Transform {
 
-    public Vector2f position;
-    public Vector2f scale;
+    // Notified whenever position or scale actually changes
+    public interface Listener {
+        void transformChanged(Transform transform);
+    }
+
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+
+    // Only changed through the setters, so every write bumps version and reaches the listeners
+    private final Vector2f position = new Vector2f();
+    private final Vector2f scale    = new Vector2f();
+    private int version = 0;
+    private Listener[] listeners = NO_LISTENERS;
+
+    // State at the start of the simulation step in which it last changed, for interpolated
+    // rendering. Saved lazily on the first write of a step, so unmoved transforms cost nothing.
+    private static int currentStep = 0;
+    private final Vector2f previousPosition = new Vector2f();
+    private final Vector2f previousScale    = new Vector2f();
+    private int savedStep = -1;
 
     public Transform() {
-        init(new Vector2f(), new Vector2f());
+        this(new Vector2f(), new Vector2f());
     }
 
     public Transform(Vector2f position) {
-        init(position, new Vector2f());
+        this(position, new Vector2f());
     }
 
     public Transform(Vector2f position, Vector2f scale) {
         init(position, scale);
+        // Being created is not a move: nothing to interpolate from
+        previousPosition.set(this.position);
+        previousScale.set(this.scale);
+    }
+
+    public void init(Vector2fc position, Vector2fc scale) {
+        set(position.x(), position.y(), scale.x(), scale.y());
+    }
+
+    public Vector2fc getPosition() {
+        return this.position;
+    }
+
+    public Vector2fc getScale() {
+        return this.scale;
+    }
+
+    public void setPosition(float x, float y) {
+        set(x, y, scale.x, scale.y);
+    }
+
+    public void translate(float dx, float dy) {
+        set(position.x + dx, position.y + dy, scale.x, scale.y);
+    }
+
+    public void setScale(float width, float height) {
+        set(position.x, position.y, width, height);
+    }
+
+    private void set(float x, float y, float width, float height) {
+        if (position.x == x && position.y == y && scale.x == width && scale.y == height) {
+            return;
+        }
+        if (savedStep != currentStep) {
+            previousPosition.set(position);
+            previousScale.set(scale);
+            savedStep = currentStep;
+        }
+        position.set(x, y);
+        scale.set(width, height);
+        version++;
+        for (Listener listener : listeners) {
+            listener.transformChanged(this);
+        }
+    }
+
+    // Called once before every simulation step
+    public static void beginStep() {
+        currentStep++;
+    }
+
+    // Whether the transform changed during the latest step
+    public boolean movedThisStep() {
+        return savedStep == currentStep;
+    }
+
+    // Position and scale blended from the start of the latest step (alpha 0) to now (alpha 1).
+    // Transforms that did not move during the latest step are simply where they are.
+    public float interpolatedX(float alpha) {
+        return movedThisStep() ? previousPosition.x + (position.x - previousPosition.x) * alpha : position.x;
+    }
+
+    public float interpolatedY(float alpha) {
+        return movedThisStep() ? previousPosition.y + (position.y - previousPosition.y) * alpha : position.y;
+    }
+
+    public float interpolatedWidth(float alpha) {
+        return movedThisStep() ? previousScale.x + (scale.x - previousScale.x) * alpha : scale.x;
+    }
+
+    public float interpolatedHeight(float alpha) {
+        return movedThisStep() ? previousScale.y + (scale.y - previousScale.y) * alpha : scale.y;
+    }
+
+    // Counts changes, so readers can tell whether anything moved since they last looked
+    public int getVersion() {
+        return this.version;
+    }
+
+    public void addListener(Listener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
     }
 
-    public void init(Vector2f position, Vector2f scale) {
-        this.position = position;
-        this.scale    = scale;
+    public void removeListener(Listener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                Listener[] remaining = new Listener[listeners.length - 1];
+                System.arraycopy(listeners, 0, remaining, 0, i);
+                System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+                listeners = remaining;
+                return;
+            }
+        }
     }
 
     public Transform copy() {
@@ -29,8 +138,7 @@ public class Transform {
     }
 
     public void copy(Transform to) {
-        to.position.set(this.position);
-        to.scale.set(this.scale);
+        to.init(this.position, this.scale);
     }
 
     @Override
@@ -3,6 +3,15 @@ package engine;
 import org.lwjgl.Version;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.opengl.GL;
+import render.Framebuffer;
+import render.RenderStats;
+import render.Renderer;
+import render.Samplers;
+import render.TextureLoader;
+import util.Profiler;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.*;
@@ -20,6 +29,34 @@ public class Window {
     private ImGuiLayer imGuiLayer;
     private static Scene currentScene;
 
+    // Simulation rate in fixed-timestep mode
+    private static final double FIXED_DT= 1.0 / 60.0;
+    // Longest frame time fed to the simulation, so a stall is not followed by a burst of catch-up steps
+    private static final double MAX_FRAME_TIME= 0.25;
+    // GL time per frame given to uploading textures that finished loading in the background
+    private static final long TEXTURE_UPLOAD_BUDGET_NANOS= 2_000_000L;
+    // Shows or hides the profiler overlay; -Dprofiler=true turns it on from the start
+    private static final int PROFILER_KEY= GLFW_KEY_F3;
+    private boolean fixedTimestep= false;
+
+    // Runs the scene's updates on a separate thread, which hands render snapshots to this one
+    private boolean simulationThread= false;
+    private volatile boolean simulating= false;
+
+    // Headless: the window stays hidden and every frame is drawn into framebuffer instead. With no
+    // display to connect to, GLFW runs without a platform and takes its context from OSMesa, which
+    // renders on the CPU (Mesa llvmpipe), so this works on machines without a GPU.
+    private boolean headless= false;
+    private Framebuffer framebuffer;
+    private int startScene= 0;
+
+    // Run on each new scene's renderer before the scene adds anything to it
+    private Consumer<Renderer> rendererSetup= renderer -> {};
+
+    // Clock of runFrame(), which advances by the given dt instead of real time
+    private double scriptedTime= 0.0;
+    private double scriptedAccumulator= 0.0;
+
     private Window(){
         this.width= 1980;
         this.height= 1080;
@@ -31,11 +68,15 @@ public class Window {
         switch (newScene){
             case 0:
                 currentScene= new LevelEditorScene();
+                get().rendererSetup.accept(currentScene.renderer);
+                currentScene.renderer.setSnapshotMode(get().simulationThread);
                 currentScene.init();
                 currentScene.start();
                 break;
             case 1:
                 currentScene= new LevelScene();
+                get().rendererSetup.accept(currentScene.renderer);
+                currentScene.renderer.setSnapshotMode(get().simulationThread);
                 currentScene.init();
                 currentScene.start();
                 break;
@@ -62,81 +103,267 @@ public class Window {
 
         init();
         loop();
-
-        imGuiLayer.destroy();
-        glfwFreeCallbacks(glfwWindow);
-        glfwDestroyWindow(glfwWindow);
-
-        glfwTerminate();
-        glfwSetErrorCallback(null).free();
-
+        destroy();
     }
 
     public void init(){
         GLFWErrorCallback.createPrint(System.err).set();
+        if(Boolean.getBoolean("profiler")){
+            Profiler.setEnabled(true);
+        }
 
+        boolean offscreenOnly= headless && !hasDisplay();
+        if(offscreenOnly){
+            glfwInitHint(GLFW_PLATFORM, GLFW_PLATFORM_NULL);
+        }
         if(!glfwInit()){
             throw new IllegalStateException("Unable to initialize GLFW.");
         }
 
         glfwDefaultWindowHints();
         glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
-        glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE);
-        glfwWindowHint(GLFW_MAXIMIZED, GLFW_TRUE);
+        if(offscreenOnly){
+            glfwWindowHint(GLFW_CONTEXT_CREATION_API, GLFW_OSMESA_CONTEXT_API);
+        }else if(!headless){
+            glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE);
+            glfwWindowHint(GLFW_MAXIMIZED, GLFW_TRUE);
+        }
 
         glfwWindow= glfwCreateWindow(this.width, this.height, this.title, NULL, NULL);
 
         glfwSetCursorPosCallback(glfwWindow, MouseListener::mousePosCallback);
         glfwSetMouseButtonCallback(glfwWindow, MouseListener::mouseButtonCallback);
         glfwSetScrollCallback(glfwWindow, MouseListener::mouseScrollCallback);
-        glfwSetKeyCallback(glfwWindow, KeyListener::keyCallback);
+        glfwSetKeyCallback(glfwWindow, Window::keyCallback);
 
         if(glfwWindow == NULL){
             throw new IllegalStateException("Failed to create the GLFW window");
         }
 
         glfwMakeContextCurrent(glfwWindow);
-        glfwSwapInterval(1);
-        glfwShowWindow(glfwWindow);
+        if(headless){
+            glfwSwapInterval(0);
+        }else{
+            glfwSwapInterval(1);
+            glfwShowWindow(glfwWindow);
+        }
 
         GL.createCapabilities();
 
         glEnable(GL_BLEND);
         glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
 
-        imGuiLayer = new ImGuiLayer();
-        imGuiLayer.init(glfwWindow);
+        if(headless){
+            // No UI: output and timings are the scene's alone
+            framebuffer= new Framebuffer(this.width, this.height);
+            framebuffer.bind();
+        }else{
+            imGuiLayer = new ImGuiLayer();
+            imGuiLayer.init(glfwWindow);
+        }
+
+        Window.changeScene(startScene);
 
-        Window.changeScene(0);
+    }
 
+    private static void keyCallback(long window, int key, int scancode, int action, int mods){
+        if(key == PROFILER_KEY && action == GLFW_PRESS){
+            Profiler.setEnabled(!Profiler.isEnabled());
+        }
+        KeyListener.keyCallback(window, key, scancode, action, mods);
+    }
+
+    private static boolean hasDisplay(){
+        return System.getenv("DISPLAY") != null || System.getenv("WAYLAND_DISPLAY") != null;
+    }
+
+    public void destroy(){
+        if(framebuffer != null){
+            framebuffer.cleanup();
+        }
+        if(imGuiLayer != null){
+            imGuiLayer.destroy();
+        }
+        Samplers.cleanup();
+        glfwFreeCallbacks(glfwWindow);
+        glfwDestroyWindow(glfwWindow);
+
+        glfwTerminate();
+        glfwSetErrorCallback(null).free();
     }
     public void loop(){
+        if(simulationThread){
+            threadedLoop();
+            return;
+        }
 
-        float beginTime= (float) glfwGetTime();
-        float endTime;
-        float dt= -1.0f;
+        double lastTime= glfwGetTime();
+        double accumulator= 0.0;
 
         while(!glfwWindowShouldClose(glfwWindow)){
-            glfwPollEvents();
+            beginFrame();
+
+            // The clock stays in double: as a float it loses sub-millisecond precision after a few hours
+            double now= glfwGetTime();
+            double frameTime= Math.min(now - lastTime, MAX_FRAME_TIME);
+            lastTime= now;
+
+            float alpha= 1.0f;
+            if(fixedTimestep){
+                // Simulate in fixed steps whatever the frame rate, then draw between the last two states
+                accumulator+= frameTime;
+                while(accumulator >= FIXED_DT){
+                    update((float) FIXED_DT);
+                    accumulator-= FIXED_DT;
+                }
+                alpha= (float) (accumulator / FIXED_DT);
+            }else{
+                update((float) frameTime);
+            }
+            currentScene.render(alpha);
+            endFrame();
+        }
+    }
 
-            imGuiLayer.begin();
+    // The GL thread only polls events and draws the latest snapshot; vsync in swap no longer
+    // holds back the simulation, and the simulation no longer delays the frame
+    private void threadedLoop(){
+        simulating= true;
+        Thread simulation= new Thread(this::simulate, "simulation");
+        simulation.start();
 
-            glClearColor(r, g, b, a);
-            glClear(GL_COLOR_BUFFER_BIT);
+        while(!glfwWindowShouldClose(glfwWindow)){
+            beginFrame();
+            currentScene.renderSnapshot(glfwGetTime(), FIXED_DT);
+            endFrame();
+        }
+
+        simulating= false;
+        try {
+            simulation.join();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            if(dt >= 0){
-                currentScene.update(dt);
-                currentScene.imgui();
+    // Simulation thread: fixed FIXED_DT steps on its own clock, sleeping between them, and a
+    // snapshot after each round. Scene updates must not create GL objects in this mode.
+    private void simulate(){
+        double nextStep= glfwGetTime();
+        while(simulating){
+            double now= glfwGetTime();
+            if(now < nextStep){
+                LockSupport.parkNanos((long) ((nextStep - now) * 1e9));
+                continue;
             }
 
-            imGuiLayer.end();
+            // After a long stall, drop the backlog beyond MAX_FRAME_TIME instead of racing through it
+            nextStep= Math.max(nextStep, now - MAX_FRAME_TIME);
+            while(nextStep <= now){
+                update((float) FIXED_DT);
+                nextStep+= FIXED_DT;
+            }
+            Profiler.begin("Scene.captureSnapshot");
+            currentScene.captureSnapshot(glfwGetTime());
+            Profiler.end();
+        }
+    }
 
-            glfwSwapBuffers(glfwWindow);
+    // One simulation step
+    private void update(float dt){
+        Profiler.begin("Scene.update");
+        Transform.beginStep();
+        currentScene.update(dt);
+        Profiler.end();
+    }
 
-            endTime= (float) glfwGetTime();
-            dt= endTime - beginTime;
-            beginTime= endTime;
+    // One frame of exactly dt, whatever time it takes: for scripted runs, which have to play
+    // out the same way on every machine. Takes the same path as loop() for the fixed timestep
+    // and simulation thread settings, except that the simulation steps on this thread.
+    public void runFrame(float dt){
+        beginFrame();
+        scriptedTime+= dt;
+        if(simulationThread){
+            update(dt);
+            currentScene.captureSnapshot(scriptedTime);
+            currentScene.renderSnapshot(scriptedTime, FIXED_DT);
+        }else if(fixedTimestep){
+            scriptedAccumulator+= dt;
+            while(scriptedAccumulator >= FIXED_DT){
+                update((float) FIXED_DT);
+                scriptedAccumulator-= FIXED_DT;
+            }
+            currentScene.render((float) (scriptedAccumulator / FIXED_DT));
+        }else{
+            update(dt);
+            currentScene.render(1.0f);
+        }
+        endFrame();
+    }
+
+    private void beginFrame(){
+        Profiler.beginFrame();
+        RenderStats.beginFrame();
+        glfwPollEvents();
+        TextureLoader.uploadPending(TEXTURE_UPLOAD_BUDGET_NANOS);
+
+        if(imGuiLayer != null){
+            imGuiLayer.begin();
         }
+
+        glClearColor(r, g, b, a);
+        glClear(GL_COLOR_BUFFER_BIT);
+    }
+
+    // Scene and profiler UI, then present. Headless frames stay in the framebuffer.
+    private void endFrame(){
+        if(headless){
+            return;
+        }
+        Profiler.begin("ImGui");
+        currentScene.imgui();
+        imGuiLayer.end();
+        Profiler.end();
+
+        Profiler.begin("swap");
+        glfwSwapBuffers(glfwWindow);
+        Profiler.end();
+    }
+
+    // Renders off-screen at the given size, into getFramebuffer(); has to be set before init()
+    public void setHeadless(int width, int height){
+        this.headless= true;
+        this.width= width;
+        this.height= height;
+    }
+
+    public boolean isHeadless(){
+        return headless;
+    }
+
+    public Framebuffer getFramebuffer(){
+        return framebuffer;
+    }
+
+    // Scene init() switches to; has to be set before init()
+    public void setStartScene(int startScene){
+        this.startScene= startScene;
+    }
+
+    // Runs updates on a simulation thread; takes effect for scenes created from now on, so
+    // it has to be set before run()
+    public void setSimulationThread(boolean simulationThread){
+        this.simulationThread= simulationThread;
+    }
+
+    // Runs the scene at a fixed FIXED_DT rate and interpolates rendering between steps
+    public void setFixedTimestep(boolean fixedTimestep){
+        this.fixedTimestep= fixedTimestep;
+    }
+
+    // Configures the renderer of scenes created from now on (see EngineOptions)
+    public void setRendererSetup(Consumer<Renderer> rendererSetup){
+        this.rendererSetup= rendererSetup;
     }
 
 
@@ -0,0 +1,52 @@
+package render;
+
+import engine.Camera;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+// Uniform buffer with the camera matrices, shared by every shader that declares the Camera
+// block (Shader attaches the block to BINDING when it links). Renderer publishes it once
+// per frame, and only rewrites it when the camera changed.
+public class CameraUniforms {
+    public static final String BLOCK_NAME = "Camera";
+    public static final int BINDING = 0;
+    // std140 layout: mat4 uProj, mat4 uView, mat4 uViewProj
+    private static final int MAT4_BYTES = 16 * Float.BYTES;
+    private static final int SIZE_BYTES = 3 * MAT4_BYTES;
+
+    private static int uboID = 0;
+    private static ByteBuffer data;
+    private static Camera lastCamera;
+    private static int lastVersion;
+
+    private CameraUniforms() {}
+
+    public static void upload(Camera camera) {
+        if (uboID == 0) {
+            uboID = glGenBuffers();
+            data  = BufferUtils.createByteBuffer(SIZE_BYTES);
+            glBindBuffer(GL_UNIFORM_BUFFER, uboID);
+            glBufferData(GL_UNIFORM_BUFFER, SIZE_BYTES, GL_DYNAMIC_DRAW);
+            glBindBufferBase(GL_UNIFORM_BUFFER, BINDING, uboID);
+        }
+
+        int version = camera.getVersion();
+        if (camera == lastCamera && version == lastVersion) {
+            return;
+        }
+
+        camera.getProjectionMatrix().get(0, data);
+        camera.getViewMatrix().get(MAT4_BYTES, data);
+        camera.getViewProjectionMatrix().get(2 * MAT4_BYTES, data);
+        glBindBuffer(GL_UNIFORM_BUFFER, uboID);
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, data);
+
+        lastCamera  = camera;
+        lastVersion = version;
+    }
+}
@@ -0,0 +1,65 @@
+package render;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL30.*;
+
+// Off-screen render target with a single RGBA8 colour attachment, e.g. for headless runs
+public class Framebuffer {
+    private final int fboID;
+    private final Texture colour;
+    private final int width, height;
+
+    public Framebuffer(int width, int height) {
+        this.width  = width;
+        this.height = height;
+
+        int texID = glGenTextures();
+        GLState.bindTexture(GL_TEXTURE_2D, texID);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        this.colour = new Texture("framebuffer", texID, width, height);
+
+        fboID = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, fboID);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texID, 0);
+        if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
+            throw new IllegalStateException("Error: (Framebuffer) Framebuffer is not complete");
+        }
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    // Draws go into this framebuffer, over its whole area, until unbind()
+    public void bind() {
+        glBindFramebuffer(GL_FRAMEBUFFER, fboID);
+        glViewport(0, 0, width, height);
+    }
+
+    public void unbind() {
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    // RGBA pixels of the colour attachment, bottom row first as GL stores them. Waits for
+    // every draw into it to finish.
+    public ByteBuffer readPixels() {
+        ByteBuffer pixels = BufferUtils.createByteBuffer(4 * width * height);
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, fboID);
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        return pixels;
+    }
+
+    public void cleanup() {
+        glDeleteFramebuffers(fboID);
+        glDeleteTextures(colour.getId());
+        GLState.textureDeleted(colour.getId());
+    }
+
+    public Texture getColour()  { return this.colour; }
+    public int getWidth()       { return this.width; }
+    public int getHeight()      { return this.height; }
+}
@@ -0,0 +1,40 @@
+package render;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import util.AssetPool;
+
+import static org.lwjgl.opengl.GL20.GL_MAX_TEXTURE_IMAGE_UNITS;
+import static org.lwjgl.opengl.GL11.glGetInteger;
+
+// RenderDevice on the current OpenGL context
+public class GLRenderDevice implements RenderDevice {
+
+    @Override
+    public int maxTextureImageUnits() {
+        return glGetInteger(GL_MAX_TEXTURE_IMAGE_UNITS);
+    }
+
+    @Override
+    public boolean supportsStreaming(VertexFormat format) {
+        GLCapabilities caps = GL.getCapabilities();
+        boolean bufferStorage = caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+        // Instanced streaming selects its region with a base instance (GL 4.2)
+        return bufferStorage && (!format.instanced || caps.OpenGL42);
+    }
+
+    @Override
+    public Shader loadShader(String filePath, String... defines) {
+        return AssetPool.getShader(filePath, defines);
+    }
+
+    @Override
+    public QuadIndexBuffer createQuadIndices(int maxQuads) {
+        return new QuadIndexBuffer(maxQuads);
+    }
+
+    @Override
+    public void startBatch(RenderBatch batch, QuadIndexBuffer indices) {
+        batch.start(indices);
+    }
+}
@@ -0,0 +1,144 @@
+package render;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL33.glBindSampler;
+
+// Shadow copy of the GL binding state the renderer touches: current program, VAO, active
+// texture unit and the 2D / 2D array texture and sampler bound on each unit. Binds go through here and
+// only reach GL when they change something, so consecutive batches sharing a shader or a
+// texture do not rebind it. Anything else that changes these bindings behind our back
+// (e.g. the ImGui backend) must call invalidate() afterwards.
+public class GLState {
+    // Sentinel for state we cannot vouch for, which forces the next bind through
+    private static final int UNKNOWN = -1;
+
+    private static int program     = UNKNOWN;
+    private static int vertexArray = UNKNOWN;
+    private static int activeUnit  = UNKNOWN;
+    private static int[] textures2D      = new int[0];
+    private static int[] textureArrays2D = new int[0];
+    private static int[] samplers        = new int[0];
+
+    private GLState() {}
+
+    public static void useProgram(int id) {
+        if (program == id) {
+            RenderStats.stateChangeSkipped();
+            return;
+        }
+        glUseProgram(id);
+        program = id;
+        RenderStats.stateChangeIssued();
+    }
+
+    public static void bindVertexArray(int id) {
+        if (vertexArray == id) {
+            RenderStats.stateChangeSkipped();
+            return;
+        }
+        glBindVertexArray(id);
+        vertexArray = id;
+        RenderStats.stateChangeIssued();
+    }
+
+    // unit is the index, not the GL_TEXTUREi enum
+    public static void activeTexture(int unit) {
+        if (activeUnit == unit) {
+            RenderStats.stateChangeSkipped();
+            return;
+        }
+        glActiveTexture(GL_TEXTURE0 + unit);
+        activeUnit = unit;
+        RenderStats.stateChangeIssued();
+    }
+
+    // Binds on the given unit, switching the active unit only when the binding changes
+    public static void bindTexture(int unit, int target, int id) {
+        int[] bound = boundFor(target, unit);
+        if (bound != null && bound[unit] == id) {
+            RenderStats.stateChangeSkipped();
+            return;
+        }
+        activeTexture(unit);
+        glBindTexture(target, id);
+        if (bound != null) {
+            bound[unit] = id;
+        }
+        RenderStats.stateChangeIssued();
+    }
+
+    // Sampler bindings are per unit and do not need the unit to be active
+    public static void bindSampler(int unit, int id) {
+        ensureUnits(unit);
+        if (samplers[unit] == id) {
+            RenderStats.stateChangeSkipped();
+            return;
+        }
+        glBindSampler(unit, id);
+        samplers[unit] = id;
+        RenderStats.stateChangeIssued();
+    }
+
+    // Binds on unit 0, for texture creation and uploads. Batches sample from unit 1 up, so
+    // this never replaces a texture a draw relies on.
+    public static void bindTexture(int target, int id) {
+        bindTexture(0, target, id);
+    }
+
+    // Deleting an object silently unbinds it, so forget it wherever it was bound
+    public static void programDeleted(int id) {
+        if (program == id) {
+            program = 0;
+        }
+    }
+
+    public static void vertexArrayDeleted(int id) {
+        if (vertexArray == id) {
+            vertexArray = 0;
+        }
+    }
+
+    public static void textureDeleted(int id) {
+        for (int i = 0; i < textures2D.length; i++) {
+            if (textures2D[i] == id)      textures2D[i] = 0;
+            if (textureArrays2D[i] == id) textureArrays2D[i] = 0;
+        }
+    }
+
+    // Forgets everything, so the next bind of each kind is issued unconditionally
+    public static void invalidate() {
+        program     = UNKNOWN;
+        vertexArray = UNKNOWN;
+        activeUnit  = UNKNOWN;
+        Arrays.fill(textures2D, UNKNOWN);
+        Arrays.fill(textureArrays2D, UNKNOWN);
+        Arrays.fill(samplers, UNKNOWN);
+    }
+
+    // Tracking array for the target, or null for targets that are not tracked (always issued)
+    private static int[] boundFor(int target, int unit) {
+        if (target != GL_TEXTURE_2D && target != GL_TEXTURE_2D_ARRAY) {
+            return null;
+        }
+        ensureUnits(unit);
+        return target == GL_TEXTURE_2D ? textures2D : textureArrays2D;
+    }
+
+    private static void ensureUnits(int unit) {
+        if (unit >= textures2D.length) {
+            int units = Math.max(unit + 1, glGetInteger(GL_MAX_COMBINED_TEXTURE_IMAGE_UNITS));
+            int old   = textures2D.length;
+            textures2D      = Arrays.copyOf(textures2D, units);
+            textureArrays2D = Arrays.copyOf(textureArrays2D, units);
+            samplers        = Arrays.copyOf(samplers, units);
+            Arrays.fill(textures2D, old, units, UNKNOWN);
+            Arrays.fill(textureArrays2D, old, units, UNKNOWN);
+            Arrays.fill(samplers, old, units, UNKNOWN);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package render;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL33.*;
+
+// Measures GPU time between begin() and end() with GL_TIME_ELAPSED queries. Results come
+// back a few frames later, so the queries rotate through a small ring and are only read once
+// available; the CPU never waits for them. Elapsed-time queries cannot nest or overlap.
+public class GpuTimer {
+    private static final int LATENCY = 4;
+
+    private final int[] queries = new int[LATENCY];
+    private final boolean[] pending = new boolean[LATENCY];
+    private int next = 0;
+    private long lastNanos = 0;
+
+    public GpuTimer() {
+        for (int i = 0; i < LATENCY; i++) {
+            queries[i] = glGenQueries();
+        }
+    }
+
+    public void begin() {
+        collect();
+        if (pending[next]) {
+            // Still in flight after LATENCY frames: drop that sample rather than stall
+            next = (next + 1) % LATENCY;
+            if (pending[next]) {
+                return;
+            }
+        }
+        glBeginQuery(GL_TIME_ELAPSED, queries[next]);
+    }
+
+    public void end() {
+        if (pending[next]) {
+            return;
+        }
+        glEndQuery(GL_TIME_ELAPSED);
+        pending[next] = true;
+        next = (next + 1) % LATENCY;
+    }
+
+    // Reads every finished query, oldest first, keeping the newest result
+    private void collect() {
+        for (int k = 0; k < LATENCY; k++) {
+            int i = (next + k) % LATENCY;
+            if (pending[i] && glGetQueryObjecti(queries[i], GL_QUERY_RESULT_AVAILABLE) != 0) {
+                lastNanos  = glGetQueryObjectui64(queries[i], GL_QUERY_RESULT);
+                pending[i] = false;
+            }
+        }
+    }
+
+    // GPU time of the most recent measurement that has completed
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public void cleanup() {
+        for (int query : queries) {
+            glDeleteQueries(query);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package render;
+
+import static org.lwjgl.opengl.GL15.*;
+
+// Element buffer with the two triangles of every quad up to maxQuads. The content only depends
+// on the quad count, so one buffer is shared by every batch of a Renderer. Indices are 16-bit
+// whenever the vertices of maxQuads quads fit in an unsigned short.
+public class QuadIndexBuffer {
+    // Indices of one quad, relative to its first vertex
+    static final int[] QUAD = {3, 2, 0, 0, 2, 1};
+
+    private final int eboID;
+    private final int maxQuads;
+    private final int type;
+
+    public QuadIndexBuffer(int maxQuads) {
+        this.maxQuads = maxQuads;
+        this.type     = 4 * maxQuads <= 0xFFFF ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+        this.eboID    = glGenBuffers();
+
+        // The element binding belongs to the bound VAO, so make sure it is not some batch's
+        GLState.bindVertexArray(0);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
+        if (type == GL_UNSIGNED_SHORT) {
+            short[] elements = new short[6 * maxQuads];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = (short) (4 * (i / 6) + QUAD[i % 6]);
+            }
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, elements, GL_STATIC_DRAW);
+        } else {
+            int[] elements = new int[6 * maxQuads];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = 4 * (i / 6) + QUAD[i % 6];
+            }
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, elements, GL_STATIC_DRAW);
+        }
+    }
+
+    // Binds the buffer as the element array of the currently bound VAO
+    public void bind() {
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
+    }
+
+    // GL_UNSIGNED_SHORT or GL_UNSIGNED_INT, to pass to the draw calls
+    public int getType() {
+        return type;
+    }
+
+    public int getIndexSize() {
+        return type == GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+    }
+
+    public int getMaxQuads() {
+        return maxQuads;
+    }
+
+    public void cleanup() {
+        glDeleteBuffers(eboID);
+    }
+}
@@ -1,204 +1,628 @@
 package render;
 
 import components.SpriteRender;
-import engine.Window;
+import engine.Transform;
 import org.joml.Vector2f;
 import org.joml.Vector4f;
-import util.AssetPool;
-
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ARBBufferStorage;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL44;
+import util.Profiler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL42.glDrawElementsInstancedBaseInstance;
 
 public class RenderBatch implements Comparable<RenderBatch> {
-    // Vertex layout:
+    // Vertex layout: see VertexFormat
     // Pos(2) | Color(4) | TexCoords(2) | TexId(1)
-    private final int POS_SIZE        = 2;
-    private final int COLOR_SIZE      = 4;
-    private final int TEX_COORDS_SIZE = 2;
-    private final int TEX_ID_SIZE     = 1;
+    private final VertexFormat format;
+    private final int spriteSizeBytes;
+
+    // The tex id holds the texture slot in its low bits (0 = untextured) and, with texture
+    // arrays, the layer above them; default.glsl decodes it the same way
+    private static final int TEX_SLOT_BITS    = 4;
+    private static final int MAX_SHADER_SLOTS = (1 << TEX_SLOT_BITS) - 1;
+    private static int maxTextureSlots = -1;
 
-    private final int POS_OFFSET        = 0;
-    private final int COLOR_OFFSET      = POS_OFFSET + POS_SIZE;
-    private final int TEX_COORDS_OFFSET = COLOR_OFFSET + COLOR_SIZE;
-    private final int TEX_ID_OFFSET     = TEX_COORDS_OFFSET + TEX_COORDS_SIZE;
+    // Corners of the unit quad the instanced format is drawn over, in vertex order
+    private static final float[] UNIT_QUAD = {1, 1, 1, 0, 0, 0, 0, 1};
 
-    private final int VERTEX_SIZE       = 9;
-    private final int VERTEX_SIZE_BYTES = VERTEX_SIZE * Float.BYTES;
+    // Streaming mode: the VBO holds STREAM_REGIONS copies of the vertices, written through a
+    // persistent mapping and used round-robin, each one guarded by a fence
+    private static final int STREAM_REGIONS    = 3;
+    private static final int STREAM_MAP_FLAGS  = GL_MAP_WRITE_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+    private static final long FENCE_TIMEOUT_NS = 1_000_000L;
 
     private SpriteRender[] sprites;
+    // Texture each slot was registered with. In snapshot mode this is the snapshot's, which the
+    // GL thread may use, unlike the sprite's live one.
+    private Texture[] slotTextures;
+    // Per slot, the texture unit its texture takes (index into textures or textureArrays), or -1
+    private int[] slotUnits;
     private int numSprites;
     private boolean hasRoom;
-    private float[] vertices;
-    private int[] texSlots = {0, 1, 2, 3, 4, 5, 6, 7};
+    private ByteBuffer vertices;
+    private int[] texSlots;
 
-    private int vaoID, vboID;
+    private int vaoID, vboID, quadVboID;
+    private QuadIndexBuffer indices;
+    private boolean ownsIndices;
     private int maxBatchSize;
     private Shader shader;
     private List<Texture> textures;
+    private final boolean useTextureArrays;
+    private List<TextureArray> textureArrays;
+    // Sprites using each texture unit. A unit no sprite uses is nulled in its list and reused,
+    // so the other units keep their index and no vertex has to be rewritten.
+    private int[] unitRefs;
+    private int unitsInUse;
     private int zIndex;
 
+    private boolean streaming;
+    private ByteBuffer mappedVertices;
+    private long[] regionFences;
+    private int region;
+
+    // Per region, the range of sprite indices [dirtyStart, dirtyEnd) whose vertices changed
+    // since that region was last written. Without streaming there is a single region.
+    private int[] dirtyStart;
+    private int[] dirtyEnd;
+
+    // Culling: the Renderer marks the slots that are on screen before each render, and
+    // only those are rebuilt and drawn, through an index list of the visible quads
+    private boolean culling;
+    private int[] visibleSlots;
+    private int[] visibleStamp;
+    private int cullStamp;
+    private int numVisible;
+    private int cullEboID;
+    private ByteBuffer cullIndices;
+    private boolean cullIndicesBound;
+
+    // Snapshot mode: snapshot values are unpacked into these to feed VertexFormat
+    private final Vector4f scratchColor = new Vector4f();
+    private final Vector2f[] scratchTexCoords = {new Vector2f(), new Vector2f(), new Vector2f(), new Vector2f()};
+
     public RenderBatch(int maxBatchSize, int zIndex) {
-        this.shader       = AssetPool.getShader("assets/shaders/default.glsl");
-        this.sprites      = new SpriteRender[maxBatchSize];
-        this.maxBatchSize = maxBatchSize;
-        this.vertices     = new float[maxBatchSize * 4 * VERTEX_SIZE];
-        this.numSprites   = 0;
-        this.hasRoom      = true;
-        this.textures     = new ArrayList<>();
-        this.zIndex       = zIndex;
+        this(maxBatchSize, zIndex, VertexFormat.STANDARD, false, false);
+    }
+
+    // streaming requests the persistent-mapped vertex path; it is ignored when the
+    // context has neither GL 4.4 nor ARB_buffer_storage.
+    // useTextureArrays samples every texture through the TextureArray of its size, so a batch
+    // only runs out of texture units when it holds more distinct sizes than there are slots.
+    public RenderBatch(int maxBatchSize, int zIndex, VertexFormat format, boolean streaming, boolean useTextureArrays) {
+        this.shader           = Renderer.device().loadShader("assets/shaders/default.glsl", shaderDefines(format, useTextureArrays));
+        this.sprites          = new SpriteRender[maxBatchSize];
+        this.slotTextures     = new Texture[maxBatchSize];
+        this.slotUnits        = new int[maxBatchSize];
+        this.maxBatchSize     = maxBatchSize;
+        this.format           = format;
+        this.spriteSizeBytes  = format.spriteSizeBytes;
+        this.vertices         = BufferUtils.createByteBuffer(maxBatchSize * spriteSizeBytes);
+        this.numSprites       = 0;
+        this.hasRoom          = true;
+        this.textures         = new ArrayList<>();
+        this.useTextureArrays = useTextureArrays;
+        this.textureArrays    = new ArrayList<>();
+        this.zIndex           = zIndex;
+        this.streaming        = streaming && supportsStreaming(format);
+
+        // Slot i samples texture unit i + 1
+        this.texSlots = new int[maxTextureSlots()];
+        for (int i = 0; i < texSlots.length; i++) {
+            texSlots[i] = i + 1;
+        }
+        this.unitRefs = new int[texSlots.length];
+
+        int regions     = this.streaming ? STREAM_REGIONS : 1;
+        this.dirtyStart = new int[regions];
+        this.dirtyEnd   = new int[regions];
+        for (int r = 0; r < regions; r++) {
+            clearDirty(r);
+        }
+    }
+
+    // Texture units a batch samples from. Unit 0 is left to texture loading and the tex id
+    // keeps TEX_SLOT_BITS for the slot.
+    public static int maxTextureSlots() {
+        if (maxTextureSlots < 0) {
+            maxTextureSlots = Math.min(Renderer.device().maxTextureImageUnits() - 1, MAX_SHADER_SLOTS);
+        }
+        return maxTextureSlots;
+    }
+
+    private static String[] shaderDefines(VertexFormat format, boolean useTextureArrays) {
+        List<String> defines = new ArrayList<>();
+        defines.add("MAX_TEXTURES " + maxTextureSlots());
+        if (format.instanced) {
+            defines.add("INSTANCED");
+        }
+        if (useTextureArrays) {
+            defines.add("TEXTURE_ARRAYS");
+        }
+        return defines.toArray(new String[0]);
     }
 
+    public static boolean supportsStreaming(VertexFormat format) {
+        return Renderer.device().supportsStreaming(format);
+    }
+
+    // Starts the batch with an index buffer of its own
     public void start() {
+        start(new QuadIndexBuffer(format.instanced ? 1 : maxBatchSize));
+        ownsIndices = true;
+    }
+
+    // Starts the batch on a shared index buffer, which must hold at least maxBatchSize quads
+    // (one quad for instanced batches)
+    public void start(QuadIndexBuffer indices) {
+        assert indices.getMaxQuads() >= (format.instanced ? 1 : maxBatchSize) : "Error: (RenderBatch) Index buffer too small";
+        this.indices = indices;
+
         vaoID = glGenVertexArrays();
-        glBindVertexArray(vaoID);
+        GLState.bindVertexArray(vaoID);
+
+        if (format.instanced) {
+            quadVboID = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, quadVboID);
+            glBufferData(GL_ARRAY_BUFFER, UNIT_QUAD, GL_STATIC_DRAW);
+            glVertexAttribPointer(0, 2, GL_FLOAT, false, 2 * Float.BYTES, 0);
+            glEnableVertexAttribArray(0);
+        }
 
         vboID = glGenBuffers();
         glBindBuffer(GL_ARRAY_BUFFER, vboID);
-        glBufferData(GL_ARRAY_BUFFER, vertices.length * Float.BYTES, GL_DYNAMIC_DRAW);
+        if (streaming) {
+            allocateStreamingStorage();
+        } else {
+            glBufferData(GL_ARRAY_BUFFER, vertices.capacity(), GL_DYNAMIC_DRAW);
+        }
 
-        int eboID    = glGenBuffers();
-        int[] indices = generateIndices();
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        indices.bind();
 
-        glVertexAttribPointer(0, POS_SIZE,        GL_FLOAT, false, VERTEX_SIZE_BYTES, (long) POS_OFFSET        * Float.BYTES);
-        glEnableVertexAttribArray(0);
-        glVertexAttribPointer(1, COLOR_SIZE,      GL_FLOAT, false, VERTEX_SIZE_BYTES, (long) COLOR_OFFSET      * Float.BYTES);
-        glEnableVertexAttribArray(1);
-        glVertexAttribPointer(2, TEX_COORDS_SIZE, GL_FLOAT, false, VERTEX_SIZE_BYTES, (long) TEX_COORDS_OFFSET * Float.BYTES);
-        glEnableVertexAttribArray(2);
-        glVertexAttribPointer(3, TEX_ID_SIZE,     GL_FLOAT, false, VERTEX_SIZE_BYTES, (long) TEX_ID_OFFSET     * Float.BYTES);
-        glEnableVertexAttribArray(3);
+        format.enableAttributes();
+    }
+
+    private void allocateStreamingStorage() {
+        long size = (long) STREAM_REGIONS * vertices.capacity();
+        if (GL.getCapabilities().OpenGL44) {
+            GL44.glBufferStorage(GL_ARRAY_BUFFER, size, STREAM_MAP_FLAGS);
+        } else {
+            ARBBufferStorage.glBufferStorage(GL_ARRAY_BUFFER, size, STREAM_MAP_FLAGS);
+        }
+
+        ByteBuffer mapped = glMapBufferRange(GL_ARRAY_BUFFER, 0, size, STREAM_MAP_FLAGS);
+        if (mapped == null) {
+            throw new IllegalStateException("Error: (RenderBatch) Could not map streaming vertex buffer");
+        }
+        mappedVertices = mapped.order(ByteOrder.nativeOrder());
+        regionFences   = new long[STREAM_REGIONS];
     }
 
     public void addSprite(SpriteRender spr) {
+        int index = addSprite(spr, spr.getTexture());
+        loadVertexProperties(index, 1.0f);
+        markDirty(index);
+    }
+
+    // Takes a slot for the sprite and registers the texture, without writing any vertices.
+    // Snapshot mode passes the texture recorded in the snapshot and writes the slot itself.
+    int addSprite(SpriteRender spr, Texture tex) {
         int index = this.numSprites;
         this.sprites[index] = spr;
+        this.slotTextures[index] = tex;
         this.numSprites++;
-
-        if (spr.getTexture() != null && !textures.contains(spr.getTexture())) {
-            textures.add(spr.getTexture());
+        spr.setBatch(this, index);
+
+        if (tex != null && useTextureArrays) {
+            slotUnits[index] = acquireUnit(textureArrays, TextureArray.forTexture(tex));
+        } else if (tex != null) {
+            slotUnits[index] = acquireUnit(textures, tex);
+        } else {
+            slotUnits[index] = -1;
         }
 
-        loadVertexProperties(index);
-
         if (numSprites >= this.maxBatchSize) {
             this.hasRoom = false;
         }
+        return index;
+    }
+
+    // Swap-removes the sprite: the last sprite takes its slot and only that slot's
+    // vertices are patched, so removal is O(1) whatever the batch size
+    public void removeSprite(SpriteRender spr) {
+        int index = spr.getBatchIndex();
+        int last  = numSprites - 1;
+        if (spr.getBatch() != this || sprites[index] != spr) {
+            return;
+        }
+
+        if (slotUnits[index] >= 0) {
+            releaseUnit(slotUnits[index]);
+        }
+        if (index != last) {
+            SpriteRender moved = sprites[last];
+            sprites[index] = moved;
+            slotTextures[index] = slotTextures[last];
+            slotUnits[index] = slotUnits[last];
+            moved.setBatch(this, index);
+            vertices.put(index * spriteSizeBytes, vertices, last * spriteSizeBytes, spriteSizeBytes);
+            markDirty(index);
+        }
+
+        sprites[last] = null;
+        slotTextures[last] = null;
+        numSprites--;
+        hasRoom = true;
+        spr.setBatch(null, -1);
+
+        if (numSprites == 0) {
+            textures.clear();
+            textureArrays.clear();
+        }
+    }
+
+    // The unit holding the texture (or array), taking a free one the first time
+    private <T> int acquireUnit(List<T> units, T unit) {
+        int i = units.indexOf(unit);
+        if (i < 0) {
+            i = units.indexOf(null);
+            if (i < 0) {
+                i = units.size();
+                units.add(unit);
+            } else {
+                units.set(i, unit);
+            }
+            unitsInUse++;
+        }
+        unitRefs[i]++;
+        return i;
+    }
+
+    private void releaseUnit(int i) {
+        unitRefs[i]--;
+        if (unitRefs[i] == 0) {
+            List<?> units = useTextureArrays ? textureArrays : textures;
+            units.set(i, null);
+            unitsInUse--;
+        }
     }
 
-    private void loadVertexProperties(int index) {
+    // Whether every sprite of other could be moved into this batch
+    public boolean canMerge(RenderBatch other) {
+        if (other == this || other.zIndex != zIndex || other.format != format
+                || other.streaming != streaming || other.useTextureArrays != useTextureArrays
+                || numSprites + other.numSprites > maxBatchSize) {
+            return false;
+        }
+
+        int units = unitsInUse;
+        if (useTextureArrays) {
+            for (TextureArray array : other.textureArrays) {
+                if (array != null && !textureArrays.contains(array)) {
+                    units++;
+                }
+            }
+        } else {
+            for (Texture tex : other.textures) {
+                if (tex != null && !textures.contains(tex)) {
+                    units++;
+                }
+            }
+        }
+        return units <= texSlots.length;
+    }
+
+    // alpha blends moving sprites between their previous and current simulation state
+    private void loadVertexProperties(int index, float alpha) {
         SpriteRender sprite = this.sprites[index];
-        int offset          = index * 4 * VERTEX_SIZE;
-        Vector4f color      = sprite.getColor();
-        Vector2f[] texCoords = sprite.getTexCoords();
+        Transform transform = sprite.gameObject.transform;
+
+        format.putSprite(vertices, index * spriteSizeBytes,
+                transform.interpolatedX(alpha), transform.interpolatedY(alpha),
+                transform.interpolatedWidth(alpha), transform.interpolatedHeight(alpha),
+                sprite.getColor(), sprite.getTexCoords(), texIdOf(sprite.getTexture()));
+    }
+
+    // Snapshot mode: writes sprite i of the snapshot into the given slot
+    void writeSprite(int index, RenderSnapshot snap, int i, float alpha) {
+        scratchColor.set(snap.colors[4 * i], snap.colors[4 * i + 1], snap.colors[4 * i + 2], snap.colors[4 * i + 3]);
+        for (int c = 0; c < 4; c++) {
+            scratchTexCoords[c].set(snap.texCoords[8 * i + 2 * c], snap.texCoords[8 * i + 2 * c + 1]);
+        }
+
+        format.putSprite(vertices, index * spriteSizeBytes,
+                snap.interpolated(i, 0, alpha), snap.interpolated(i, 1, alpha),
+                snap.interpolated(i, 2, alpha), snap.interpolated(i, 3, alpha),
+                scratchColor, scratchTexCoords, texIdOf(snap.textures[i]));
+        markDirty(index);
+    }
 
-        int texId = 0;
-        if (sprite.getTexture() != null) {
-            texId = textures.indexOf(sprite.getTexture()) + 1;
+    private int texIdOf(Texture tex) {
+        if (tex != null && useTextureArrays) {
+            // addSprite registered the texture; forTexture could create GL objects, and this
+            // may run on a worker thread
+            TextureArray array = TextureArray.ownerOf(tex);
+            if (array != null) {
+                return (textureArrays.indexOf(array) + 1) | (array.layerOf(tex) << TEX_SLOT_BITS);
+            }
+        } else if (tex != null) {
+            return textures.indexOf(tex) + 1;
         }
+        return 0;
+    }
 
-        float xAdd = 1.0f;
-        float yAdd = 1.0f;
-        for (int i = 0; i < 4; i++) {
-            if (i == 1)      yAdd = 0.0f;
-            else if (i == 2) xAdd = 0.0f;
-            else if (i == 3) yAdd = 1.0f;
+    private void markDirty(int index) {
+        for (int r = 0; r < dirtyStart.length; r++) {
+            dirtyStart[r] = Math.min(dirtyStart[r], index);
+            dirtyEnd[r]   = Math.max(dirtyEnd[r], index + 1);
+        }
+    }
 
-            vertices[offset]     = sprite.gameObject.transform.position.x + (xAdd * sprite.gameObject.transform.scale.x);
-            vertices[offset + 1] = sprite.gameObject.transform.position.y + (yAdd * sprite.gameObject.transform.scale.y);
-            vertices[offset + 2] = color.x;
-            vertices[offset + 3] = color.y;
-            vertices[offset + 4] = color.z;
-            vertices[offset + 5] = color.w;
-            vertices[offset + 6] = texCoords[i].x;
-            vertices[offset + 7] = texCoords[i].y;
-            vertices[offset + 8] = texId;
+    private void clearDirty(int r) {
+        dirtyStart[r] = Integer.MAX_VALUE;
+        dirtyEnd[r]   = 0;
+    }
 
-            offset += VERTEX_SIZE;
+    // Uploads only the vertices of the sprites between the first and last dirty index
+    private void uploadDirtyRange() {
+        if (dirtyStart[0] >= dirtyEnd[0]) {
+            return;
         }
+
+        int start = dirtyStart[0] * spriteSizeBytes;
+        int count = (dirtyEnd[0] - dirtyStart[0]) * spriteSizeBytes;
+
+        glBindBuffer(GL_ARRAY_BUFFER, vboID);
+        glBufferSubData(GL_ARRAY_BUFFER, start, vertices.slice(start, count));
+        RenderStats.addBytesUploaded(count);
+
+        clearDirty(0);
     }
 
-    public void render() {
-        boolean rebufferData = false;
-        for (int i = 0; i < numSprites; i++) {
-            if (sprites[i].isDirty()) {
-                loadVertexProperties(i);
-                sprites[i].setClean();
-                rebufferData = true;
+    // Moves to the next streaming region, waits until the GPU is done reading it and
+    // copies in every vertex that changed since it was last used
+    private void writeStreamingRegion() {
+        region = (region + 1) % STREAM_REGIONS;
+
+        long fence = regionFences[region];
+        if (fence != 0) {
+            int waitFlags = 0;
+            while (true) {
+                int status = glClientWaitSync(fence, waitFlags, FENCE_TIMEOUT_NS);
+                if (status == GL_ALREADY_SIGNALED || status == GL_CONDITION_SATISFIED || status == GL_WAIT_FAILED) {
+                    break;
+                }
+                waitFlags = GL_SYNC_FLUSH_COMMANDS_BIT;
+            }
+            glDeleteSync(fence);
+            regionFences[region] = 0;
+        }
+
+        if (dirtyStart[region] >= dirtyEnd[region]) {
+            return;
+        }
+
+        int start = dirtyStart[region] * spriteSizeBytes;
+        int count = (dirtyEnd[region] - dirtyStart[region]) * spriteSizeBytes;
+        mappedVertices.put(region * vertices.capacity() + start, vertices, start, count);
+        RenderStats.addBytesUploaded(count);
+
+        clearDirty(region);
+    }
+
+    // Turns visibility culling on or off; while on, only slots passed to markVisible
+    // since the last beginCulling() are rebuilt and drawn
+    public void setCulling(boolean culling) {
+        this.culling = culling;
+        if (culling && visibleSlots == null) {
+            visibleSlots = new int[maxBatchSize];
+            visibleStamp = new int[maxBatchSize];
+        }
+    }
+
+    public void beginCulling() {
+        cullStamp++;
+        numVisible = 0;
+    }
+
+    public void markVisible(int index) {
+        if (visibleStamp[index] != cullStamp) {
+            visibleStamp[index] = cullStamp;
+            visibleSlots[numVisible++] = index;
+        }
+    }
+
+    // CPU half of a frame: rewrites the vertices of dirty sprites (only the visible ones while
+    // culling). It only touches this batch's own arrays and no GL state, so Renderer can run it
+    // for several batches at once on worker threads. Must be followed by render() on the GL thread.
+    public void buildVertices(float alpha) {
+        if (culling) {
+            // Keep the batch's draw order for overlapping sprites
+            Arrays.sort(visibleSlots, 0, numVisible);
+            for (int k = 0; k < numVisible; k++) {
+                rebuildIfDirty(visibleSlots[k], alpha);
+            }
+        } else {
+            for (int i = 0; i < numSprites; i++) {
+                rebuildIfDirty(i, alpha);
             }
         }
+    }
+
+    // Uploads what buildVertices() wrote and draws the batch
+    public void render() {
+        if (culling && numVisible == 0) {
+            return;
+        }
 
-        if (rebufferData) {
-            glBindBuffer(GL_ARRAY_BUFFER, vboID);
-            glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+        Profiler.begin("RenderBatch.upload");
+        if (streaming) {
+            writeStreamingRegion();
+        } else {
+            uploadDirtyRange();
         }
+        Profiler.end();
 
+        Profiler.begin("RenderBatch.draw");
+        // Bindings are left in place afterwards: GLState skips whatever the next batch shares.
+        // The camera matrices come from the CameraUniforms block, published by Renderer.
         shader.use();
-        shader.uploadMat4f("uProj", Window.getScene().camera().getProjectionMatrix());
-        shader.uploadMat4f("uView", Window.getScene().camera().getViewMatrix());
 
         for (int i = 0; i < textures.size(); i++) {
-            glActiveTexture(GL_TEXTURE0 + i + 1);
-            textures.get(i).bind();
+            if (textures.get(i) != null) {
+                textures.get(i).bind(i + 1);
+            }
+        }
+        for (int i = 0; i < textureArrays.size(); i++) {
+            if (textureArrays.get(i) != null) {
+                textureArrays.get(i).bind(i + 1);
+            }
         }
         shader.uploadIntArray("uTextures", texSlots);
 
-        glBindVertexArray(vaoID);
-        glDrawElements(GL_TRIANGLES, numSprites * 6, GL_UNSIGNED_INT, 0);
-        glBindVertexArray(0);
-
-        for (int i = 0; i < textures.size(); i++) {
-            glActiveTexture(GL_TEXTURE0 + i + 1);
-            textures.get(i).unbind();
+        GLState.bindVertexArray(vaoID);
+        // Instanced batches have no per-sprite indices to select from, so they draw every
+        // instance once any of them is visible
+        int quads = numSprites;
+        if (culling && !format.instanced && numVisible < numSprites) {
+            bindCulledIndices();
+            quads = numVisible;
+        } else if (cullIndicesBound) {
+            indices.bind();
+            cullIndicesBound = false;
         }
 
-        shader.detach();
+        int indexType = indices.getType();
+        if (format.instanced && streaming) {
+            glDrawElementsInstancedBaseInstance(GL_TRIANGLES, 6, indexType, 0, numSprites, region * maxBatchSize);
+        } else if (format.instanced) {
+            glDrawElementsInstanced(GL_TRIANGLES, 6, indexType, 0, numSprites);
+        } else if (streaming) {
+            glDrawElementsBaseVertex(GL_TRIANGLES, quads * 6, indexType, 0, region * maxBatchSize * 4);
+        } else {
+            glDrawElements(GL_TRIANGLES, quads * 6, indexType, 0);
+        }
+        if (streaming) {
+            regionFences[region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        }
+        RenderStats.addBatchDrawn(culling && !format.instanced ? quads : numSprites);
+        Profiler.end();
     }
 
-    private int[] generateIndices() {
-        int[] elements = new int[6 * maxBatchSize];
-        for (int i = 0; i < maxBatchSize; i++) {
-            loadElementIndices(elements, i);
+    private void rebuildIfDirty(int index, float alpha) {
+        if (sprites[index].isDirty()) {
+            loadVertexProperties(index, alpha);
+            sprites[index].setClean();
+            markDirty(index);
         }
-        return elements;
     }
 
-    private void loadElementIndices(int[] elements, int index) {
-        int offsetArrayIndex = 6 * index;
-        int offset           = 4 * index;
+    // Uploads the indices of the visible quads and binds them in place of the shared ones.
+    // They use the same index type as the shared buffer. Must be called with the batch's VAO bound.
+    private void bindCulledIndices() {
+        int indexSize = indices.getIndexSize();
+        if (cullEboID == 0) {
+            cullEboID   = glGenBuffers();
+            cullIndices = BufferUtils.createByteBuffer(6 * maxBatchSize * indexSize);
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, cullEboID);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, cullIndices.capacity(), GL_STREAM_DRAW);
+        }
+
+        cullIndices.clear();
+        for (int k = 0; k < numVisible; k++) {
+            int offset = 4 * visibleSlots[k];
+            for (int j = 0; j < 6; j++) {
+                if (indexSize == Short.BYTES) {
+                    cullIndices.putShort((short) (QuadIndexBuffer.QUAD[j] + offset));
+                } else {
+                    cullIndices.putInt(QuadIndexBuffer.QUAD[j] + offset);
+                }
+            }
+        }
+        cullIndices.flip();
 
-        elements[offsetArrayIndex]     = offset + 3;
-        elements[offsetArrayIndex + 1] = offset + 2;
-        elements[offsetArrayIndex + 2] = offset + 0;
-        elements[offsetArrayIndex + 3] = offset + 0;
-        elements[offsetArrayIndex + 4] = offset + 2;
-        elements[offsetArrayIndex + 5] = offset + 1;
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, cullEboID);
+        glBufferSubData(GL_ELEMENT_ARRAY_BUFFER, 0, cullIndices);
+        RenderStats.addBytesUploaded(cullIndices.limit());
+        cullIndicesBound = true;
     }
 
     public boolean hasRoom() {
-        return hasRoom && textures.size() < 8;
+        return hasRoom && hasTextureRoom();
     }
 
     public boolean hasTextureRoom() {
-        return textures.size() < 8;
+        return unitsInUse < texSlots.length;
     }
 
     public boolean hasTexture(Texture tex) {
+        if (useTextureArrays) {
+            return textureArrays.contains(TextureArray.forTexture(tex));
+        }
         return textures.contains(tex);
     }
 
+    public int getMaxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    public boolean isEmpty() {
+        return this.numSprites == 0;
+    }
+
+    public int getNumSprites() {
+        return this.numSprites;
+    }
+
+    public SpriteRender getSprite(int index) {
+        return this.sprites[index];
+    }
+
+    public Texture getSlotTexture(int index) {
+        return slotTextures[index];
+    }
+
     public int getzIndex() {
         return this.zIndex;
     }
 
+    public VertexFormat getFormat() {
+        return this.format;
+    }
+
     public void cleanup() {
+        if (regionFences != null) {
+            for (long fence : regionFences) {
+                if (fence != 0) {
+                    glDeleteSync(fence);
+                }
+            }
+        }
         glDeleteBuffers(vboID);
+        if (ownsIndices) {
+            indices.cleanup();
+        }
+        if (cullEboID != 0) {
+            glDeleteBuffers(cullEboID);
+        }
+        if (quadVboID != 0) {
+            glDeleteBuffers(quadVboID);
+        }
         glDeleteVertexArrays(vaoID);
+        GLState.vertexArrayDeleted(vaoID);
     }
 
     // BUG FIX: removed @NotNull from org.jetbrains.annotations (not in build.gradle → compile error)
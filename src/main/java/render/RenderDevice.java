@@ -0,0 +1,19 @@
+package render;
+
+// The GL work Renderer and RenderBatch need in order to create and place batches: context
+// queries, the batch shader and buffer setup. GLRenderDevice is the real one; a device that
+// creates nothing lets batch placement and vertex building run without a context (benchmarks).
+public interface RenderDevice {
+    // Texture image units available to a fragment shader
+    int maxTextureImageUnits();
+
+    // Whether persistent-mapped vertex streaming is available for the format
+    boolean supportsStreaming(VertexFormat format);
+
+    Shader loadShader(String filePath, String... defines);
+
+    QuadIndexBuffer createQuadIndices(int maxQuads);
+
+    // Creates the batch's buffers on the given shared indices
+    void startBatch(RenderBatch batch, QuadIndexBuffer indices);
+}
@@ -0,0 +1,100 @@
+package render;
+
+import components.SpriteRender;
+import engine.Camera;
+import engine.Transform;
+import org.joml.Vector2f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Copy of everything needed to draw one simulation step: the camera and, per sprite, its
+// bounds before and after the step, color, texture and texture coordinates. Filled on the
+// simulation thread and only read by the GL thread once published through a SnapshotBuffer,
+// so the renderer never touches live scene state while the simulation is running.
+public class RenderSnapshot {
+    // Volatile because the reader may peek at it while the writer refills the object
+    volatile long sequence = -1;
+    double time;
+    int count;
+    float cameraX, cameraY, cameraWidth, cameraHeight;
+
+    SpriteRender[] sprites = new SpriteRender[0];
+    int[] versions         = new int[0];
+    Texture[] textures     = new Texture[0];
+    float[] bounds         = new float[0]; // x, y, width, height
+    float[] previous       = new float[0]; // bounds at the start of the step
+    float[] colors         = new float[0]; // r, g, b, a
+    float[] texCoords      = new float[0]; // u, v of the four corners
+
+    // Records the camera and the given sprites, as of the latest simulation step
+    void capture(List<SpriteRender> spriteList, Camera camera, double time, long sequence) {
+        this.sequence = sequence;
+        this.time     = time;
+        this.count    = spriteList.size();
+        cameraX       = camera.getPosition().x;
+        cameraY       = camera.getPosition().y;
+        cameraWidth   = camera.getProjectionSize().x;
+        cameraHeight  = camera.getProjectionSize().y;
+
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            SpriteRender spr    = spriteList.get(i);
+            Transform transform = spr.gameObject.transform;
+            sprites[i]  = spr;
+            versions[i] = spr.getVersion();
+            textures[i] = spr.getTexture();
+
+            bounds[4 * i]       = transform.getPosition().x();
+            bounds[4 * i + 1]   = transform.getPosition().y();
+            bounds[4 * i + 2]   = transform.getScale().x();
+            bounds[4 * i + 3]   = transform.getScale().y();
+            previous[4 * i]     = transform.interpolatedX(0.0f);
+            previous[4 * i + 1] = transform.interpolatedY(0.0f);
+            previous[4 * i + 2] = transform.interpolatedWidth(0.0f);
+            previous[4 * i + 3] = transform.interpolatedHeight(0.0f);
+
+            Vector4f color = spr.getColor();
+            colors[4 * i]     = color.x;
+            colors[4 * i + 1] = color.y;
+            colors[4 * i + 2] = color.z;
+            colors[4 * i + 3] = color.w;
+
+            Vector2f[] uv = spr.getTexCoords();
+            for (int c = 0; c < 4; c++) {
+                texCoords[8 * i + 2 * c]     = uv[c].x;
+                texCoords[8 * i + 2 * c + 1] = uv[c].y;
+            }
+        }
+        // Drop references to sprites from larger earlier snapshots
+        Arrays.fill(sprites, count, sprites.length, null);
+        Arrays.fill(textures, count, textures.length, null);
+    }
+
+    // Whether sprite i moved during the step, so its vertices depend on the interpolation factor
+    boolean isMoving(int i) {
+        return bounds[4 * i] != previous[4 * i] || bounds[4 * i + 1] != previous[4 * i + 1]
+                || bounds[4 * i + 2] != previous[4 * i + 2] || bounds[4 * i + 3] != previous[4 * i + 3];
+    }
+
+    // Component k (0 = x, 1 = y, 2 = width, 3 = height) of sprite i's bounds, blended by alpha
+    float interpolated(int i, int k, float alpha) {
+        float from = previous[4 * i + k];
+        return from + (bounds[4 * i + k] - from) * alpha;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= sprites.length) {
+            return;
+        }
+        int capacity = Math.max(n, 2 * sprites.length);
+        sprites   = Arrays.copyOf(sprites, capacity);
+        versions  = Arrays.copyOf(versions, capacity);
+        textures  = Arrays.copyOf(textures, capacity);
+        bounds    = Arrays.copyOf(bounds, 4 * capacity);
+        previous  = Arrays.copyOf(previous, 4 * capacity);
+        colors    = Arrays.copyOf(colors, 4 * capacity);
+        texCoords = Arrays.copyOf(texCoords, 8 * capacity);
+    }
+}
@@ -0,0 +1,97 @@
+package render;
+
+// Per-frame renderer counters. Window rolls them over at the start of every frame, before
+// anything of the frame (texture uploads included) is counted, so the getters always
+// describe the last completed frame.
+public class RenderStats {
+    private static long bytesUploaded     = 0;
+    private static long lastBytesUploaded = 0;
+    private static long stateChangesIssued      = 0;
+    private static long lastStateChangesIssued  = 0;
+    private static long stateChangesSkipped     = 0;
+    private static long lastStateChangesSkipped = 0;
+    private static int drawCalls         = 0;
+    private static int lastDrawCalls     = 0;
+    private static int spritesDrawn      = 0;
+    private static int lastSpritesDrawn  = 0;
+    private static int batchesDrawn      = 0;
+    private static int lastBatchesDrawn  = 0;
+    // Measured by GpuTimer, so it lags a few frames behind the other counters
+    private static long gpuNanos = 0;
+
+    private RenderStats() {}
+
+    // Starts a new frame, keeping the totals of the previous one
+    public static void beginFrame() {
+        lastBytesUploaded = bytesUploaded;
+        bytesUploaded     = 0;
+
+        lastStateChangesIssued  = stateChangesIssued;
+        stateChangesIssued      = 0;
+        lastStateChangesSkipped = stateChangesSkipped;
+        stateChangesSkipped     = 0;
+
+        lastDrawCalls    = drawCalls;
+        drawCalls        = 0;
+        lastSpritesDrawn = spritesDrawn;
+        spritesDrawn     = 0;
+        lastBatchesDrawn = batchesDrawn;
+        batchesDrawn     = 0;
+    }
+
+    // Records one batch drawn with a single draw call
+    public static void addBatchDrawn(int sprites) {
+        drawCalls++;
+        batchesDrawn++;
+        spritesDrawn += sprites;
+    }
+
+    public static void setGpuNanos(long nanos) {
+        gpuNanos = nanos;
+    }
+
+    // Records vertex data sent to the GPU
+    public static void addBytesUploaded(long bytes) {
+        bytesUploaded += bytes;
+    }
+
+    // Bytes of vertex data uploaded during the last completed frame
+    public static long getBytesUploaded() {
+        return lastBytesUploaded;
+    }
+
+    // Records a bind GLState passed on to GL
+    public static void stateChangeIssued() {
+        stateChangesIssued++;
+    }
+
+    // Records a bind GLState dropped because the state was already set
+    public static void stateChangeSkipped() {
+        stateChangesSkipped++;
+    }
+
+    public static long getStateChangesIssued() {
+        return lastStateChangesIssued;
+    }
+
+    public static long getStateChangesSkipped() {
+        return lastStateChangesSkipped;
+    }
+
+    public static int getDrawCalls() {
+        return lastDrawCalls;
+    }
+
+    public static int getSpritesDrawn() {
+        return lastSpritesDrawn;
+    }
+
+    public static int getBatchesDrawn() {
+        return lastBatchesDrawn;
+    }
+
+    // GPU time of the renderer's draws, from the latest frame whose timer query has completed
+    public static long getGpuNanos() {
+        return gpuNanos;
+    }
+}
@@ -1,14 +1,70 @@
 package render;
 
 import components.SpriteRender;
+import engine.Camera;
 import engine.GameObject;
+import engine.Window;
+import org.joml.Vector2f;
+import util.Profiler;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Renderer {
 
     private final int MAX_BATCH_SIZE= 1000;
+    // Instanced sprites are a single 32-byte record, so their batches can be much larger
+    private final int MAX_INSTANCED_BATCH_SIZE= 10000;
     private List<RenderBatch> batches;
+    // Element buffer shared by every batch, sized for the largest one
+    private QuadIndexBuffer quadIndices;
+    private boolean streaming= false;
+    private VertexFormat vertexFormat= VertexFormat.STANDARD;
+    private boolean textureArrays= false;
+
+    // Visibility culling: sprite bounds are kept in a uniform grid, so each frame only the
+    // cells under the camera are visited
+    private final float CULL_CELL_SIZE= 256.0f;
+    private boolean culling= false;
+    private SpatialGrid grid;
+    private List<SpriteRender> movedSprites= new ArrayList<>();
+
+    // Set when a sprite is removed; half-empty batches are then merged, one merge per frame
+    private boolean needsCompaction= false;
+
+    // Builds the vertices of all batches on the common fork-join pool; only the uploads and
+    // draws have to stay on the GL thread
+    private boolean parallelBuild= false;
+
+    // Sprites that moved during the latest simulation step. Their vertices depend on the
+    // interpolation factor, so they are rebuilt every frame until they stop moving.
+    private final List<SpriteRender> interpolating= new ArrayList<>();
+
+    // Snapshot mode, for a simulation running on another thread. That side only keeps the list
+    // of live sprites and captures them into snapshots; batches are owned by the GL thread and
+    // are brought in line with the latest snapshot before drawing it.
+    private boolean snapshotMode= false;
+    private final List<SpriteRender> liveSprites= new ArrayList<>();
+    private final SnapshotBuffer snapshots= new SnapshotBuffer();
+    private final Camera snapshotCamera= new Camera(new Vector2f());
+    private long drawnSequence= -1;
+    private int seenStamp= 0;
+    private final List<SpriteRender> vanished= new ArrayList<>();
+
+    // Half-empty batches, emptiest first, gathered by compactBatches
+    private static final Comparator<RenderBatch> BY_FILL= Comparator.comparingInt(RenderBatch::getNumSprites);
+    private final List<RenderBatch> compactionSources= new ArrayList<>();
+
+    // Texture arrays copy a texture when its sprite is added, so sprites whose texture is still
+    // a loading placeholder wait here, undrawn like the transparent placeholder, until it is uploaded
+    private final List<SpriteRender> awaitingTexture= new ArrayList<>();
+
+    // GPU time of all batch draws, created with the first frame (needs a GL context)
+    private GpuTimer gpuTimer;
+
+    // Where batches get their GL objects from; swapped for a headless one by the benchmarks
+    private static RenderDevice device= new GLRenderDevice();
 
     public Renderer(){
         this.batches= new ArrayList<>();
@@ -17,17 +73,51 @@ public class Renderer {
     public void add(GameObject go){
         SpriteRender spr= go.getComponent(SpriteRender.class);
         if(spr != null){
+            spr.setRenderer(this);
+            if(snapshotMode){
+                liveSprites.add(spr);
+                return;
+            }
+            if(isAwaitingTexture(spr.getTexture())){
+                awaitingTexture.add(spr);
+                return;
+            }
             addSpr(spr);
+            if(culling){
+                grid.update(spr);
+            }
         }
     }
 
     private void addSpr(SpriteRender sprite){
+        addSpr(sprite, sprite.getTexture(), formatFor(sprite.getTexCoords()), false);
+    }
+
+    private boolean isAwaitingTexture(Texture tex){
+        return textureArrays && tex != null && !tex.isLoaded();
+    }
+
+    private void addLoadedSprites(){
+        for(int i= awaitingTexture.size() - 1; i >= 0; i--){
+            SpriteRender spr= awaitingTexture.get(i);
+            if(!isAwaitingTexture(spr.getTexture())){
+                awaitingTexture.remove(i);
+                addSpr(spr);
+                if(culling){
+                    grid.update(spr);
+                }
+            }
+        }
+    }
+
+    // Puts the sprite in the first batch of its format with room for it and its texture.
+    // Snapshot mode passes the snapshot's texture and writes the vertices itself (slotOnly).
+    private void addSpr(SpriteRender sprite, Texture tex, VertexFormat format, boolean slotOnly){
         boolean added= false;
         for(RenderBatch batch : batches){
-            if(batch.hasRoom() && batch.getzIndex() == sprite.gameObject.getZIndex()){
-                Texture tex= sprite.getTexture();
+            if(batch.hasRoom() && batch.getzIndex() == sprite.gameObject.getZIndex() && batch.getFormat() == format){
                 if(tex == null || (batch.hasTexture(tex) || batch.hasTextureRoom())){
-                    batch.addSprite(sprite);
+                    addToBatch(batch, sprite, tex, slotOnly);
                     added= true;
                     break;
                 }
@@ -36,18 +126,360 @@ public class Renderer {
         }
 
         if(!added){
-            RenderBatch newBatch= new RenderBatch(MAX_BATCH_SIZE, sprite.gameObject.getZIndex());
-            newBatch.start();
+            int batchSize= format.instanced ? MAX_INSTANCED_BATCH_SIZE : MAX_BATCH_SIZE;
+            RenderBatch newBatch= new RenderBatch(batchSize, sprite.gameObject.getZIndex(), format, streaming, textureArrays);
+            if(quadIndices == null){
+                quadIndices= device.createQuadIndices(MAX_BATCH_SIZE);
+            }
+            device.startBatch(newBatch, quadIndices);
+            newBatch.setCulling(culling);
             batches.add(newBatch);
-            newBatch.addSprite(sprite);
+            addToBatch(newBatch, sprite, tex, slotOnly);
             Collections.sort(batches);
         }
     }
 
+    private static void addToBatch(RenderBatch batch, SpriteRender sprite, Texture tex, boolean slotOnly){
+        if(slotOnly){
+            batch.addSprite(sprite, tex);
+        }else{
+            batch.addSprite(sprite);
+        }
+    }
+
+    // The packed formats only hold texture coordinates in [0, 1]; other sprites keep full floats
+    private VertexFormat formatFor(Vector2f[] texCoords){
+        return vertexFormat.canPack(texCoords) ? vertexFormat : VertexFormat.STANDARD;
+    }
+
+    // Must be set before the first batch is created
+    public static void setDevice(RenderDevice device){
+        Renderer.device= device;
+    }
+
+    static RenderDevice device(){
+        return device;
+    }
+
+    // Uses persistent-mapped vertex streaming for batches created from now on, when supported
+    public void setStreaming(boolean streaming){
+        this.streaming= streaming;
+    }
+
+    // Vertex layout for batches created from now on
+    public void setVertexFormat(VertexFormat vertexFormat){
+        this.vertexFormat= vertexFormat;
+    }
+
+    // Samples textures through same-size texture arrays in batches created from now on
+    public void setTextureArrays(boolean textureArrays){
+        this.textureArrays= textureArrays;
+    }
+
+    // Switches to snapshot mode, for scenes updated on a simulation thread. Must be set before
+    // any sprite is added. Culling relies on per-move updates from the scene, so it is turned off.
+    public void setSnapshotMode(boolean snapshotMode){
+        assert batches.isEmpty() && liveSprites.isEmpty() : "Error: (Renderer) Snapshot mode must be set before adding sprites";
+        this.snapshotMode= snapshotMode;
+        if(snapshotMode){
+            setCulling(false);
+        }
+    }
+
+    // Builds batch vertices on worker threads from the next frame on
+    public void setParallelBuild(boolean parallelBuild){
+        this.parallelBuild= parallelBuild;
+    }
+
+    // Frees the sprite's batch slot. Empty batches release their GL objects right away.
+    // In snapshot mode the sprite just stops being captured; its slot goes once the GL
+    // thread draws a snapshot without it.
+    public void remove(SpriteRender sprite){
+        if(snapshotMode){
+            liveSprites.remove(sprite);
+            return;
+        }
+        if(sprite.getBatch() == null){
+            awaitingTexture.remove(sprite);
+        }
+        removeFromBatch(sprite);
+    }
+
+    private void removeFromBatch(SpriteRender sprite){
+        RenderBatch batch= sprite.getBatch();
+        if(batch == null){
+            return;
+        }
+
+        batch.removeSprite(sprite);
+        if(culling){
+            grid.remove(sprite);
+        }
+
+        if(batch.isEmpty()){
+            batch.cleanup();
+            batches.remove(batch);
+        }
+        needsCompaction= true;
+    }
+
+    // Merges a half-empty batch into another one with the same zIndex that has room for it,
+    // trying the emptiest first. Does at most one merge per call so the cost is spread over
+    // frames, and stops being called once no half-empty batch can be merged.
+    private void compactBatches(){
+        compactionSources.clear();
+        for(RenderBatch batch : batches){
+            if(batch.getNumSprites() <= batch.getMaxBatchSize() / 2){
+                compactionSources.add(batch);
+            }
+        }
+        compactionSources.sort(BY_FILL);
+
+        for(int i= 0; i < compactionSources.size(); i++){
+            RenderBatch source= compactionSources.get(i);
+            for(RenderBatch target : batches){
+                if(target.canMerge(source)){
+                    merge(source, target);
+                    return;
+                }
+            }
+        }
+        needsCompaction= false;
+    }
+
+    private void merge(RenderBatch source, RenderBatch target){
+        // Moves each sprite with the texture its slot was registered with. In snapshot mode this
+        // runs on the GL thread, so the live sprite must not be read: the slot only gets its
+        // texture here, and renderSnapshot rewrites it from the snapshot (setBatch clears the built version).
+        while(!source.isEmpty()){
+            int last= source.getNumSprites() - 1;
+            SpriteRender spr= source.getSprite(last);
+            Texture tex= source.getSlotTexture(last);
+            source.removeSprite(spr);
+            addToBatch(target, spr, tex, snapshotMode);
+        }
+        source.cleanup();
+        batches.remove(source);
+    }
+
+    // Only draws sprites inside the camera's view; sprites already added are indexed now
+    public void setCulling(boolean culling){
+        if(culling == this.culling){
+            return;
+        }
+
+        this.culling= culling;
+        this.grid= culling ? new SpatialGrid(CULL_CELL_SIZE) : null;
+        movedSprites.clear();
+        for(RenderBatch batch : batches){
+            batch.setCulling(culling);
+            if(culling){
+                for(int i= 0; i < batch.getNumSprites(); i++){
+                    grid.update(batch.getSprite(i));
+                }
+            }
+        }
+    }
+
+    // Called by SpriteRender when its transform changed, so the grid can be updated
+    // without scanning every sprite
+    public void spriteMoved(SpriteRender sprite){
+        // Snapshots carry the movement instead; this runs on the simulation thread then
+        if(snapshotMode){
+            return;
+        }
+        if(culling){
+            movedSprites.add(sprite);
+        }
+        if(!sprite.isInterpolating()){
+            sprite.setInterpolating(true);
+            interpolating.add(sprite);
+        }
+    }
+
     public void render(){
+        render(1.0f);
+    }
+
+    // alpha is how far the frame is between the previous simulation step (0) and the latest one (1)
+    public void render(float alpha){
+        Profiler.begin("Renderer.render");
+        markInterpolatingDirty();
+        CameraUniforms.upload(Window.getScene().camera());
+        if(!awaitingTexture.isEmpty()){
+            addLoadedSprites();
+        }
+        if(needsCompaction){
+            compactBatches();
+        }
+        if(culling){
+            markVisibleSprites();
+        }
+        Profiler.begin("Renderer.buildVertices");
+        if(parallelBuild && batches.size() > 1){
+            ForkJoinPool.commonPool().invoke(new BuildVertices(batches, 0, batches.size(), alpha));
+        }else{
+            for(RenderBatch batch : batches){
+                batch.buildVertices(alpha);
+            }
+        }
+        Profiler.end();
+        drawBatches();
+        Profiler.end();
+    }
+
+    private void drawBatches(){
+        if(gpuTimer == null){
+            gpuTimer= new GpuTimer();
+        }
+        gpuTimer.begin();
         for(RenderBatch batch : batches){
             batch.render();
         }
+        gpuTimer.end();
+        RenderStats.setGpuNanos(gpuTimer.getLastNanos());
+    }
+
+    // Splits the batches in halves until each task holds one. A batch only writes its own
+    // vertex buffer and dirty ranges, so batches can be built concurrently.
+    private static class BuildVertices extends RecursiveAction {
+        private final List<RenderBatch> batches;
+        private final int from, to;
+        private final float alpha;
+
+        BuildVertices(List<RenderBatch> batches, int from, int to, float alpha){
+            this.batches= batches;
+            this.from= from;
+            this.to= to;
+            this.alpha= alpha;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from == 1){
+                batches.get(from).buildVertices(alpha);
+                return;
+            }
+            int mid= (from + to) >>> 1;
+            invokeAll(new BuildVertices(batches, from, mid, alpha), new BuildVertices(batches, mid, to, alpha));
+        }
+    }
+
+    // Simulation thread: records the current state of every sprite and the camera, and
+    // publishes it for the GL thread. time is when the step was completed.
+    public void captureSnapshot(Camera camera, double time){
+        RenderSnapshot snap= snapshots.back();
+        snap.capture(liveSprites, camera, time, snapshots.nextSequence());
+        snapshots.publish();
+    }
+
+    // GL thread: draws the latest published snapshot. Sprites that moved during its step are
+    // interpolated over the stepLength seconds that follow it, which keeps them one step behind
+    // the simulation but moving smoothly.
+    public void renderSnapshot(double now, double stepLength){
+        RenderSnapshot snap= snapshots.latest();
+        if(snap.sequence < 0){
+            return;
+        }
+        float alpha= (float) Math.min(1.0, Math.max(0.0, (now - snap.time) / stepLength));
+
+        Profiler.begin("Renderer.renderSnapshot");
+        snapshotCamera.setPosition(snap.cameraX, snap.cameraY);
+        snapshotCamera.setProjectionSize(snap.cameraWidth, snap.cameraHeight);
+        CameraUniforms.upload(snapshotCamera);
+
+        if(snap.sequence != drawnSequence){
+            syncBatches(snap);
+            drawnSequence= snap.sequence;
+        }
+        if(needsCompaction){
+            compactBatches();
+        }
+
+        for(int i= 0; i < snap.count; i++){
+            SpriteRender spr= snap.sprites[i];
+            if(spr.getBatch() == null){
+                // Its texture is still loading
+                continue;
+            }
+            boolean moving= snap.isMoving(i);
+            if(moving || spr.getBuiltVersion() != snap.versions[i]){
+                spr.getBatch().writeSprite(spr.getBatchIndex(), snap, i, alpha);
+                // A moving sprite is written again next frame, and once more after it stops
+                spr.setBuiltVersion(moving ? -1 : snap.versions[i]);
+            }
+        }
+        drawBatches();
+        Profiler.end();
+    }
+
+    // Gives every sprite of the snapshot a slot in a batch holding its texture, and frees the
+    // slots of sprites that are no longer in it
+    private void syncBatches(RenderSnapshot snap){
+        seenStamp++;
+        for(int i= 0; i < snap.count; i++){
+            SpriteRender spr= snap.sprites[i];
+            Texture tex= snap.textures[i];
+            VertexFormat format= vertexFormat.canPack(snap.texCoords, 8 * i) ? vertexFormat : VertexFormat.STANDARD;
+            spr.setSeenStamp(seenStamp);
+
+            RenderBatch batch= spr.getBatch();
+            if(batch != null && ((tex != null && !batch.hasTexture(tex)) || !batch.getFormat().canPack(snap.texCoords, 8 * i))){
+                // The sprite switched to a texture its batch does not hold, or to UVs its format cannot pack
+                removeFromBatch(spr);
+                batch= null;
+            }
+            // A sprite whose texture is still loading is tried again with the next snapshot
+            if(batch == null && !isAwaitingTexture(tex)){
+                addSpr(spr, tex, format, true);
+            }
+        }
+
+        for(RenderBatch batch : batches){
+            for(int i= 0; i < batch.getNumSprites(); i++){
+                if(batch.getSprite(i).getSeenStamp() != seenStamp){
+                    vanished.add(batch.getSprite(i));
+                }
+            }
+        }
+        for(int i= 0; i < vanished.size(); i++){
+            removeFromBatch(vanished.get(i));
+        }
+        vanished.clear();
+    }
+
+    // A sprite that stopped moving is rebuilt once more, at its final position, then dropped
+    private void markInterpolatingDirty(){
+        for(int i= interpolating.size() - 1; i >= 0; i--){
+            SpriteRender spr= interpolating.get(i);
+            spr.markDirty();
+            if(spr.getBatch() == null || !spr.gameObject.transform.movedThisStep()){
+                spr.setInterpolating(false);
+                interpolating.set(i, interpolating.get(interpolating.size() - 1));
+                interpolating.remove(interpolating.size() - 1);
+            }
+        }
+    }
+
+    private void markVisibleSprites(){
+        for(int i= 0; i < movedSprites.size(); i++){
+            SpriteRender spr= movedSprites.get(i);
+            // Skip sprites removed after they moved
+            if(spr.getBatch() != null){
+                grid.update(spr);
+            }
+        }
+        movedSprites.clear();
+
+        for(RenderBatch batch : batches){
+            batch.beginCulling();
+        }
+
+        Camera camera= Window.getScene().camera();
+        Vector2f min= camera.getPosition();
+        Vector2f size= camera.getProjectionSize();
+        grid.query(min.x, min.y, min.x + size.x, min.y + size.y,
+                spr -> spr.getBatch().markVisible(spr.getBatchIndex()));
     }
 
 }
@@ -0,0 +1,83 @@
+package render;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.EXTTextureFilterAnisotropic.GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT;
+import static org.lwjgl.opengl.EXTTextureFilterAnisotropic.GL_TEXTURE_MAX_ANISOTROPY_EXT;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL33.*;
+
+// GL sampler objects, one per distinct TextureSampling, created on first use. Without GL 3.3
+// there are none: get() returns 0 and Texture puts the settings on the texture itself.
+public class Samplers {
+    private static final Map<TextureSampling, Integer> samplers = new HashMap<>();
+    private static float maxAnisotropy = -1.0f;
+    private static Boolean supported;
+
+    private Samplers() {}
+
+    public static boolean isSupported() {
+        if (supported == null) {
+            supported = GL.getCapabilities().OpenGL33;
+        }
+        return supported;
+    }
+
+    public static int get(TextureSampling sampling) {
+        if (!isSupported()) {
+            return 0;
+        }
+        Integer id = samplers.get(sampling);
+        if (id == null) {
+            id = glGenSamplers();
+            glSamplerParameteri(id, GL_TEXTURE_MIN_FILTER, sampling.getMinFilter());
+            glSamplerParameteri(id, GL_TEXTURE_MAG_FILTER, sampling.getMagFilter());
+            glSamplerParameteri(id, GL_TEXTURE_WRAP_S, sampling.getWrap());
+            glSamplerParameteri(id, GL_TEXTURE_WRAP_T, sampling.getWrap());
+            float anisotropy = anisotropyFor(sampling);
+            if (anisotropy > 1.0f) {
+                glSamplerParameterf(id, GL_TEXTURE_MAX_ANISOTROPY_EXT, anisotropy);
+            }
+            samplers.put(sampling, id);
+        }
+        return id;
+    }
+
+    // Puts the settings on the texture bound to GL_TEXTURE_2D, for contexts without samplers
+    static void applyToBoundTexture(TextureSampling sampling) {
+        applyToBoundTexture(GL_TEXTURE_2D, sampling);
+    }
+
+    // Same, for the texture bound to target
+    static void applyToBoundTexture(int target, TextureSampling sampling) {
+        glTexParameteri(target, GL_TEXTURE_MIN_FILTER, sampling.getMinFilter());
+        glTexParameteri(target, GL_TEXTURE_MAG_FILTER, sampling.getMagFilter());
+        glTexParameteri(target, GL_TEXTURE_WRAP_S, sampling.getWrap());
+        glTexParameteri(target, GL_TEXTURE_WRAP_T, sampling.getWrap());
+        float anisotropy = anisotropyFor(sampling);
+        if (anisotropy > 1.0f) {
+            glTexParameterf(target, GL_TEXTURE_MAX_ANISOTROPY_EXT, anisotropy);
+        }
+    }
+
+    // Requested anisotropy within the driver's limit; 1 when anisotropic filtering is unavailable
+    private static float anisotropyFor(TextureSampling sampling) {
+        if (maxAnisotropy < 0) {
+            GLCapabilities caps = GL.getCapabilities();
+            boolean available = caps.OpenGL46 || caps.GL_ARB_texture_filter_anisotropic || caps.GL_EXT_texture_filter_anisotropic;
+            maxAnisotropy = available ? glGetFloat(GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT) : 1.0f;
+        }
+        return Math.min(sampling.getMaxAnisotropy(), maxAnisotropy);
+    }
+
+    public static void cleanup() {
+        for (int id : samplers.values()) {
+            glDeleteSamplers(id);
+        }
+        samplers.clear();
+    }
+}
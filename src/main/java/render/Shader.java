@@ -5,22 +5,45 @@ import org.lwjgl.BufferUtils;
 
 import java.io.IOException;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL11.GL_FALSE;
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.*;
 
 public class Shader {
     private int shaderProgramID; // OpenGL shader program ID
-    private boolean beingUsed = false; // Tracks if shader is currently bound
     private String vertexSource; // Vertex shader source code
     private String fragmentSource; // Fragment shader source code
     private final String filepath; // Path to shader source file
+    private final String[] defines; // Names #define'd in both stages to select a variant
+
+    // A uniform's location and the value last uploaded to it, so repeated uploads of the
+    // same value can be skipped (uniform values are per program and persist between uses)
+    private static class Uniform {
+        final int location;
+        float[] lastFloats;
+        int[] lastInts;
+
+        Uniform(int location) {
+            this.location = location;
+        }
+    }
+
+    private final Map<String, Uniform> uniforms = new HashMap<>(); // Resolved at link time
+    private final FloatBuffer scratchBuffer = BufferUtils.createFloatBuffer(16); // Reused for matrix uploads
+    private final float[] scratchValues = new float[16]; // Value being compared against the last upload
+    private final int[] scratchInt = new int[1];
 
     // Constructor - loads and parses shader file into vertex/fragment parts
-    public Shader(String filepath) {
+    public Shader(String filepath, String... defines) {
         this.filepath = filepath;
+        this.defines = defines;
         try {
             // Read entire shader file
             String source = new String(Files.readAllBytes(Paths.get(filepath)));
@@ -69,13 +92,13 @@ public class Shader {
     public void compileAndLinkShaders() {
         // Compile vertex shader
         int vertexID = glCreateShader(GL_VERTEX_SHADER);
-        glShaderSource(vertexID, vertexSource);
+        glShaderSource(vertexID, withDefines(vertexSource));
         glCompileShader(vertexID);
         checkShaderCompilation(vertexID, "Vertex shader");
 
         // Compile fragment shader
         int fragmentID = glCreateShader(GL_FRAGMENT_SHADER);
-        glShaderSource(fragmentID, fragmentSource);
+        glShaderSource(fragmentID, withDefines(fragmentSource));
         glCompileShader(fragmentID);
         checkShaderCompilation(fragmentID, "Fragment shader");
 
@@ -91,6 +114,81 @@ public class Shader {
         glDetachShader(shaderProgramID, fragmentID);
         glDeleteShader(vertexID);
         glDeleteShader(fragmentID);
+
+        cacheUniformLocations();
+
+        // Camera matrices come from the shared uniform buffer
+        int cameraBlock = glGetUniformBlockIndex(shaderProgramID, CameraUniforms.BLOCK_NAME);
+        if (cameraBlock != GL_INVALID_INDEX) {
+            glUniformBlockBinding(shaderProgramID, cameraBlock, CameraUniforms.BINDING);
+        }
+    }
+
+    // Looks up every active uniform once. Arrays are stored under their plain name too,
+    // so "uTextures" and "uTextures[0]" both resolve.
+    private void cacheUniformLocations() {
+        uniforms.clear();
+        IntBuffer size = BufferUtils.createIntBuffer(1);
+        IntBuffer type = BufferUtils.createIntBuffer(1);
+
+        int count = glGetProgrami(shaderProgramID, GL_ACTIVE_UNIFORMS);
+        for (int i = 0; i < count; i++) {
+            String name = glGetActiveUniform(shaderProgramID, i, size, type);
+            Uniform uniform = new Uniform(glGetUniformLocation(shaderProgramID, name));
+            uniforms.put(name, uniform);
+            if (name.endsWith("[0]")) {
+                uniforms.put(name.substring(0, name.length() - 3), uniform);
+            }
+        }
+    }
+
+    // Cached uniform for the name; names that are not active resolve to location -1 once
+    private Uniform uniform(String varName) {
+        Uniform uniform = uniforms.get(varName);
+        if (uniform == null) {
+            uniform = new Uniform(glGetUniformLocation(shaderProgramID, varName));
+            uniforms.put(varName, uniform);
+        }
+        return uniform;
+    }
+
+    // Records the first count values of scratchValues as the uniform's value; false if unchanged.
+    // No allocation once the uniform has been uploaded.
+    private boolean changed(Uniform uniform, int count) {
+        if (uniform.lastFloats != null && Arrays.equals(uniform.lastFloats, 0, count, scratchValues, 0, count)) {
+            return false;
+        }
+        if (uniform.lastFloats == null || uniform.lastFloats.length != count) {
+            uniform.lastFloats = new float[count];
+        }
+        System.arraycopy(scratchValues, 0, uniform.lastFloats, 0, count);
+        return true;
+    }
+
+    private boolean changed(Uniform uniform, int[] values) {
+        if (uniform.lastInts != null && Arrays.equals(uniform.lastInts, values)) {
+            return false;
+        }
+        if (uniform.lastInts == null || uniform.lastInts.length != values.length) {
+            uniform.lastInts = new int[values.length];
+        }
+        System.arraycopy(values, 0, uniform.lastInts, 0, values.length);
+        return true;
+    }
+
+    // Inserts the variant's #define lines right after the #version directive
+    private String withDefines(String source) {
+        if (defines.length == 0) {
+            return source;
+        }
+
+        StringBuilder header = new StringBuilder();
+        for (String define : defines) {
+            header.append("#define ").append(define).append('\n');
+        }
+
+        int eol = source.indexOf('\n', source.indexOf("#version"));
+        return source.substring(0, eol + 1) + header + source.substring(eol + 1);
     }
 
     // Checks if shader compiled successfully
@@ -115,90 +213,124 @@ public class Shader {
         }
     }
 
-    // Activates the shader program (only if not already in use)
+    // Activates the shader program (GLState skips it if already in use)
     public void use() {
-        if (!beingUsed) {
-            glUseProgram(shaderProgramID);
-            beingUsed = true;
-        }
+        GLState.useProgram(shaderProgramID);
     }
 
-    // Deactivates the shader program
+    // Deactivates the shader program. Not needed between draws: the next use() switches programs.
     public void detach() {
-        glUseProgram(0);
-        beingUsed = false;
+        GLState.useProgram(0);
     }
 
     // Deletes the shader program
     public void cleanup() {
         glDeleteProgram(shaderProgramID);
+        GLState.programDeleted(shaderProgramID);
     }
 
     /* Uniform Upload Methods */
+    // Each one resolves the location from the cache and skips the GL call when the program
+    // already holds the same value
 
     // Uploads 4x4 matrix to shader
     public void uploadMat4f(String varName, Matrix4f mat4) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        Uniform uniform = uniform(varName);
+        mat4.get(scratchValues);
+        if (!changed(uniform, 16)) {
+            return;
+        }
         use();
-        FloatBuffer matBuffer = BufferUtils.createFloatBuffer(16);
-        mat4.get(matBuffer);
-        glUniformMatrix4fv(varLocation, false, matBuffer);
+        scratchBuffer.clear();
+        scratchBuffer.put(scratchValues, 0, 16).flip();
+        glUniformMatrix4fv(uniform.location, false, scratchBuffer);
     }
 
     // Uploads 3x3 matrix to shader
     public void uploadMat3f(String varName, Matrix3f mat3) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        Uniform uniform = uniform(varName);
+        mat3.get(scratchValues);
+        if (!changed(uniform, 9)) {
+            return;
+        }
         use();
-        FloatBuffer matBuffer = BufferUtils.createFloatBuffer(9);
-        mat3.get(matBuffer);
-        glUniformMatrix3fv(varLocation, false, matBuffer);
+        scratchBuffer.clear();
+        scratchBuffer.put(scratchValues, 0, 9).flip();
+        glUniformMatrix3fv(uniform.location, false, scratchBuffer);
     }
 
     // Uploads 4D vector to shader
     public void uploadVec4f(String varName, Vector4f vec) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        Uniform uniform = uniform(varName);
+        scratchValues[0] = vec.x;
+        scratchValues[1] = vec.y;
+        scratchValues[2] = vec.z;
+        scratchValues[3] = vec.w;
+        if (!changed(uniform, 4)) {
+            return;
+        }
         use();
-        glUniform4f(varLocation, vec.x, vec.y, vec.z, vec.w);
+        glUniform4f(uniform.location, vec.x, vec.y, vec.z, vec.w);
     }
 
     // Uploads 3D vector to shader
     public void uploadVec3f(String varName, Vector3f vec) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        Uniform uniform = uniform(varName);
+        scratchValues[0] = vec.x;
+        scratchValues[1] = vec.y;
+        scratchValues[2] = vec.z;
+        if (!changed(uniform, 3)) {
+            return;
+        }
         use();
-        glUniform3f(varLocation, vec.x, vec.y, vec.z);
+        glUniform3f(uniform.location, vec.x, vec.y, vec.z);
     }
 
     // Uploads 2D vector to shader
     public void uploadVec2f(String varName, Vector2f vec) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        Uniform uniform = uniform(varName);
+        scratchValues[0] = vec.x;
+        scratchValues[1] = vec.y;
+        if (!changed(uniform, 2)) {
+            return;
+        }
         use();
-        glUniform2f(varLocation, vec.x, vec.y);
+        glUniform2f(uniform.location, vec.x, vec.y);
     }
 
     // Uploads float value to shader
     public void uploadFloat(String varName, float val) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        Uniform uniform = uniform(varName);
+        scratchValues[0] = val;
+        if (!changed(uniform, 1)) {
+            return;
+        }
         use();
-        glUniform1f(varLocation, val);
+        glUniform1f(uniform.location, val);
     }
 
     // Uploads integer value to shader
     public void uploadInt(String varName, int val) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        Uniform uniform = uniform(varName);
+        scratchInt[0] = val;
+        if (!changed(uniform, scratchInt)) {
+            return;
+        }
         use();
-        glUniform1i(varLocation, val);
+        glUniform1i(uniform.location, val);
     }
 
     // Uploads texture slot to sampler uniform
     public void uploadTexture(String varName, int slot) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
-        glUniform1i(varLocation, slot);
+        uploadInt(varName, slot);
     }
 
     public void uploadIntArray(String varName, int[] array) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        Uniform uniform = uniform(varName);
+        if (!changed(uniform, array)) {
+            return;
+        }
         use();
-        glUniform1iv(varLocation, array);
+        glUniform1iv(uniform.location, array);
     }
 }
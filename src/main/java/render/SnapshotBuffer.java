@@ -0,0 +1,37 @@
+package render;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Triple buffer between the simulation thread (writer) and the GL thread (reader). Each side
+// owns one snapshot and the third holds the latest published one; publishing and taking are
+// single atomic swaps, so neither side ever waits for the other. Snapshots the reader is too
+// slow to take are simply overwritten.
+class SnapshotBuffer {
+    private final AtomicReference<RenderSnapshot> ready = new AtomicReference<>(new RenderSnapshot());
+    private RenderSnapshot back  = new RenderSnapshot(); // Writer's
+    private RenderSnapshot front = new RenderSnapshot(); // Reader's
+    private long nextSequence = 0;
+
+    // Writer: the snapshot to fill next
+    RenderSnapshot back() {
+        return back;
+    }
+
+    long nextSequence() {
+        return nextSequence++;
+    }
+
+    // Writer: hands the filled snapshot over and takes the stale one in exchange
+    void publish() {
+        back = ready.getAndSet(back);
+    }
+
+    // Reader: the newest published snapshot, or the one already held if nothing newer came in.
+    // Its sequence is -1 until the writer has published once.
+    RenderSnapshot latest() {
+        if (ready.get().sequence > front.sequence) {
+            front = ready.getAndSet(front);
+        }
+        return front;
+    }
+}
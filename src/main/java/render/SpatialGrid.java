@@ -0,0 +1,192 @@
+package render;
+
+import components.SpriteRender;
+import org.joml.Vector2fc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Uniform grid over sprite bounds. A sprite is listed in every cell its AABB touches, so a
+// query only visits the cells overlapping the requested rectangle.
+//
+// Only occupied cells are stored, in an open-addressed table keyed by the packed cell
+// coordinates (linear probing, backward-shift removal), so lookups box no Long.
+public class SpatialGrid {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final float cellSize;
+    // Slot i is free when cellLists[i] is null; capacity is a power of two
+    private long[] cellKeys;
+    private List<SpriteRender>[] cellLists;
+    private int cellCount;
+
+    public SpatialGrid(float cellSize) {
+        this.cellSize  = cellSize;
+        this.cellKeys  = new long[INITIAL_CAPACITY];
+        this.cellLists = newLists(INITIAL_CAPACITY);
+    }
+
+    // Inserts the sprite, or moves it if its bounds now cover different cells
+    public void update(SpriteRender spr) {
+        Vector2fc pos   = spr.gameObject.transform.getPosition();
+        Vector2fc scale = spr.gameObject.transform.getScale();
+        float x0 = Math.min(pos.x(), pos.x() + scale.x());
+        float x1 = Math.max(pos.x(), pos.x() + scale.x());
+        float y0 = Math.min(pos.y(), pos.y() + scale.y());
+        float y1 = Math.max(pos.y(), pos.y() + scale.y());
+
+        int minX = cell(x0);
+        int minY = cell(y0);
+        int maxX = cell(x1);
+        int maxY = cell(y1);
+
+        // The cell rectangle lives on the sprite, so moving it allocates nothing. A sprite
+        // still tagged with a replaced grid is treated as not listed here.
+        int[] cells = spr.getGridCells();
+        if (spr.getGrid() == this) {
+            if (cells[0] == minX && cells[1] == minY && cells[2] == maxX && cells[3] == maxY) {
+                return;
+            }
+            unlink(spr, cells);
+        }
+
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                listFor(key(cx, cy)).add(spr);
+            }
+        }
+        cells[0] = minX;
+        cells[1] = minY;
+        cells[2] = maxX;
+        cells[3] = maxY;
+        spr.setGrid(this);
+    }
+
+    public void remove(SpriteRender spr) {
+        if (spr.getGrid() == this) {
+            unlink(spr, spr.getGridCells());
+            spr.setGrid(null);
+        }
+    }
+
+    // Visits every sprite listed in a cell overlapping the rectangle. Sprites spanning
+    // several cells can be visited more than once.
+    public void query(float minX, float minY, float maxX, float maxY, Consumer<SpriteRender> visitor) {
+        int cx1 = cell(maxX);
+        int cy1 = cell(maxY);
+        for (int cx = cell(minX); cx <= cx1; cx++) {
+            for (int cy = cell(minY); cy <= cy1; cy++) {
+                List<SpriteRender> list = cellLists[slot(key(cx, cy))];
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 0; i < list.size(); i++) {
+                    visitor.accept(list.get(i));
+                }
+            }
+        }
+    }
+
+    private void unlink(SpriteRender spr, int[] range) {
+        for (int cx = range[0]; cx <= range[2]; cx++) {
+            for (int cy = range[1]; cy <= range[3]; cy++) {
+                int slot = slot(key(cx, cy));
+                List<SpriteRender> list = cellLists[slot];
+                if (list == null) {
+                    continue;
+                }
+                // Order inside a cell does not matter, so swap-remove
+                int i = list.indexOf(spr);
+                if (i >= 0) {
+                    list.set(i, list.get(list.size() - 1));
+                    list.remove(list.size() - 1);
+                }
+                if (list.isEmpty()) {
+                    removeSlot(slot);
+                }
+            }
+        }
+    }
+
+    // The slot holding the key, or the free slot where it would go
+    private int slot(long key) {
+        int mask = cellKeys.length - 1;
+        int i = hash(key) & mask;
+        while (cellLists[i] != null && cellKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    // The cell's sprite list, added empty if the cell was not stored yet
+    private List<SpriteRender> listFor(long key) {
+        int i = slot(key);
+        if (cellLists[i] == null) {
+            // Keep the table at most three quarters full, so probe runs stay short
+            if (4 * (cellCount + 1) > 3 * cellKeys.length) {
+                resize(2 * cellKeys.length);
+                i = slot(key);
+            }
+            cellKeys[i]  = key;
+            cellLists[i] = new ArrayList<>();
+            cellCount++;
+        }
+        return cellLists[i];
+    }
+
+    // Frees the slot, then moves later entries of its probe run back so none is cut off from its home slot
+    private void removeSlot(int i) {
+        int mask = cellKeys.length - 1;
+        cellLists[i] = null;
+        cellCount--;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (cellLists[j] == null) {
+                return;
+            }
+            int home = hash(cellKeys[j]) & mask;
+            boolean reachable = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+            if (!reachable) {
+                cellKeys[i]  = cellKeys[j];
+                cellLists[i] = cellLists[j];
+                cellLists[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = cellKeys;
+        List<SpriteRender>[] oldLists = cellLists;
+        cellKeys  = new long[capacity];
+        cellLists = newLists(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldLists[i] != null) {
+                int slot = slot(oldKeys[i]);
+                cellKeys[slot]  = oldKeys[i];
+                cellLists[slot] = oldLists[i];
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<SpriteRender>[] newLists(int capacity) {
+        return (List<SpriteRender>[]) new List[capacity];
+    }
+
+    // Neighbouring cells differ in the low bits of either half, so both are mixed in
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int cell(float coord) {
+        return (int) Math.floor(coord / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -4,24 +4,28 @@ import org.lwjgl.BufferUtils;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL30.glGenerateMipmap;
 import static org.lwjgl.stb.STBImage.*;
 
 public class Texture {
     private String filePath;
     private int texID;
-    private int width, height;
+    private int width, height, channels;
+    // As stored on the GPU, which is what its size depends on
+    private int internalFormat = GL_RGBA;
+    private volatile boolean loaded = true;
+    private boolean deleted = false;
+    private TextureSampling sampling = TextureSampling.PIXEL_ART;
+    private int samplerID = -1;    // Resolved on first bind
+    private boolean mipmapped = false;
 
     public Texture(String filePath) {
         this.filePath = filePath;
 
-        texID = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, texID);
-
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        generate();
 
         IntBuffer width    = BufferUtils.createIntBuffer(1);
         IntBuffer height   = BufferUtils.createIntBuffer(1);
@@ -32,18 +36,7 @@ public class Texture {
         ByteBuffer image = stbi_load(filePath, width, height, channels, 0);
 
         if (image != null) {
-            this.width  = width.get(0);
-            this.height = height.get(0);
-
-            if (channels.get(0) == 3) {
-                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, width.get(0), height.get(0),
-                        0, GL_RGB, GL_UNSIGNED_BYTE, image);
-            } else if (channels.get(0) == 4) {
-                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width.get(0), height.get(0),
-                        0, GL_RGBA, GL_UNSIGNED_BYTE, image);
-            } else {
-                assert false : "Error: (Texture) Unknown number of channels '" + channels.get(0) + "'";
-            }
+            upload(width.get(0), height.get(0), channels.get(0), image);
         } else {
             assert false : "Error: (Texture) Could not load image '" + filePath + "'";
         }
@@ -51,14 +44,175 @@ public class Texture {
         stbi_image_free(image);
     }
 
+    // Creates an RGBA texture from pixels already in memory, e.g. a packed atlas page.
+    // name only identifies the texture, nothing is read from disk.
+    public Texture(String name, int width, int height, ByteBuffer pixels) {
+        this.filePath = name;
+        this.width    = width;
+        this.height   = height;
+        this.channels = 4;
+
+        generate();
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+    }
+
+    // Wraps an RGBA texture object that was created elsewhere, e.g. a framebuffer attachment.
+    // texID 0 wraps nothing, for sprites that are batched but never drawn (headless benchmarks).
+    public Texture(String name, int texID, int width, int height) {
+        this.filePath = name;
+        this.texID    = texID;
+        this.width    = width;
+        this.height   = height;
+        this.channels = 4;
+    }
+
+    // A texture whose image is still being decoded (see TextureLoader). Until upload() it is a
+    // single transparent pixel, so sprites using it are drawn but invisible.
+    static Texture pending(String filePath) {
+        Texture texture = new Texture(filePath, 0, 1, 1);
+        texture.loaded = false;
+        texture.generate();
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE, BufferUtils.createByteBuffer(4));
+        return texture;
+    }
+
+    // A texture with no image yet, left bound, for loaders that upload the levels themselves
+    // (TextureBaker). internalFormat is the one they upload with, e.g. a compressed format.
+    static Texture allocate(String filePath, int width, int height, int internalFormat) {
+        Texture texture = new Texture(filePath, 0, width, height);
+        texture.internalFormat = internalFormat;
+        texture.generate();
+        return texture;
+    }
+
+    // Replaces the image. Texture coordinates are normalised, so sprites already using the
+    // texture need no update.
+    void upload(int width, int height, int channels, ByteBuffer pixels) {
+        GLState.bindTexture(GL_TEXTURE_2D, texID);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexImage2D(GL_TEXTURE_2D, 0, format(channels), width, height, 0, format(channels), GL_UNSIGNED_BYTE, pixels);
+        setImage(width, height, channels);
+    }
+
+    // Same, from the pixel unpack buffer currently bound, starting at offset
+    void upload(int width, int height, int channels, long offset) {
+        GLState.bindTexture(GL_TEXTURE_2D, texID);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexImage2D(GL_TEXTURE_2D, 0, format(channels), width, height, 0, format(channels), GL_UNSIGNED_BYTE, offset);
+        setImage(width, height, channels);
+    }
+
+    // Called with the texture bound, right after its level 0 was replaced
+    private void setImage(int width, int height, int channels) {
+        this.width    = width;
+        this.height   = height;
+        this.channels = channels;
+        this.internalFormat = format(channels);
+        this.loaded   = true;
+        this.mipmapped = false;
+        if (sampling.usesMipmaps()) {
+            generateMipmaps();
+        }
+    }
+
+    // Takes effect from the next bind(unit). Generates the mip chain if the settings need one.
+    // A TextureArray the texture was already copied into keeps sampling it the old way.
+    public void setSampling(TextureSampling sampling) {
+        this.sampling  = sampling;
+        this.samplerID = -1;
+        GLState.bindTexture(GL_TEXTURE_2D, texID);
+        if (!Samplers.isSupported()) {
+            Samplers.applyToBoundTexture(sampling);
+        }
+        if (sampling.usesMipmaps() && !mipmapped) {
+            generateMipmaps();
+        }
+    }
+
+    private void generateMipmaps() {
+        // A baked texture without mips caps its levels at 0
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, 1000);
+        glGenerateMipmap(GL_TEXTURE_2D);
+        mipmapped = true;
+    }
+
+    // The loader uploaded a mip chain of its own (TextureBaker)
+    void markMipmapped() {
+        this.mipmapped = true;
+    }
+
+    private static int format(int channels) {
+        if (channels == 3) {
+            return GL_RGB;
+        }
+        assert channels == 4 : "Error: (Texture) Unknown number of channels '" + channels + "'";
+        return GL_RGBA;
+    }
+
+    private void generate() {
+        texID = glGenTextures();
+        GLState.bindTexture(GL_TEXTURE_2D, texID);
+
+        // Used as is where there are no sampler objects; otherwise the sampler takes precedence
+        Samplers.applyToBoundTexture(sampling);
+    }
+
     public void bind() {
-        glBindTexture(GL_TEXTURE_2D, texID);
+        GLState.bindTexture(GL_TEXTURE_2D, texID);
+    }
+
+    // Binds to the given texture unit index, with the texture's sampler
+    public void bind(int unit) {
+        GLState.bindTexture(unit, GL_TEXTURE_2D, texID);
+        if (Samplers.isSupported()) {
+            if (samplerID < 0) {
+                samplerID = Samplers.get(sampling);
+            }
+            GLState.bindSampler(unit, samplerID);
+        }
     }
 
     public void unbind() {
-        glBindTexture(GL_TEXTURE_2D, 0);
+        GLState.bindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    // Frees the GL texture; the object must not be drawn with afterwards
+    public void delete() {
+        deleted = true;
+        if (texID != 0) {
+            glDeleteTextures(texID);
+            GLState.textureDeleted(texID);
+            texID = 0;
+        }
+        TextureArray.textureDeleted(this);
+    }
+
+    // GPU memory taken by the image, as uploaded; a mip chain adds a third
+    public long getSizeBytes() {
+        long size;
+        if (internalFormat == GL_COMPRESSED_RGBA_S3TC_DXT5_EXT) {
+            // 16 bytes per 4x4 block
+            size = (long) ((width + 3) / 4) * ((height + 3) / 4) * 16;
+        } else {
+            size = (long) width * height * channels;
+        }
+        return mipmapped ? size + size / 3 : size;
     }
 
-    public int getWidth()  { return this.width; }
-    public int getHeight() { return this.height; }
+    // Compressed textures cannot be copied into RGBA8 storage as they are
+    public boolean isCompressed() {
+        return internalFormat == GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+    }
+
+    public TextureSampling getSampling() { return this.sampling; }
+
+    public int getWidth()       { return this.width; }
+    public int getHeight()      { return this.height; }
+    public int getChannels()    { return this.channels; }
+    public int getInternalFormat() { return this.internalFormat; }
+    public int getId()          { return this.texID; }
+    public String getFilePath() { return this.filePath; }
+    // False while an asynchronously loaded texture still shows its placeholder
+    public boolean isLoaded()   { return this.loaded; }
+    public boolean isDeleted()  { return this.deleted; }
 }
@@ -0,0 +1,177 @@
+package render;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL43.glCopyImageSubData;
+
+// A GL_TEXTURE_2D_ARRAY holding copies of same-size textures with the same sampling, one per
+// layer. Batches bind the array once and pick the layer per vertex, so any number of textures
+// of that size take a single texture unit. The array is sampled like its textures, mip chain
+// included, so a texture's sampling has to be set before its sprites are added.
+public class TextureArray {
+    private static final int INITIAL_LAYERS = 4;
+    // RenderBatch packs the layer into the 16-bit tex id above its 4 slot bits
+    private static final int MAX_ENCODABLE_LAYERS = 4096;
+
+    private static final List<TextureArray> arrays = new ArrayList<>();
+    private static final Map<Texture, TextureArray> owners = new HashMap<>();
+    private static int maxLayers = -1;
+
+    private int texID;
+    private final int width, height;
+    private final TextureSampling sampling;
+    private int capacity;
+    private final List<Texture> layers;
+
+    private TextureArray(int width, int height, TextureSampling sampling) {
+        this.width    = width;
+        this.height   = height;
+        this.sampling = sampling;
+        this.capacity = 0;
+        this.layers   = new ArrayList<>();
+        allocate(INITIAL_LAYERS);
+    }
+
+    // Returns the array holding the texture, copying it into a free layer of an array of
+    // the same size and sampling (or a new array) the first time it is asked for
+    public static TextureArray forTexture(Texture tex) {
+        TextureArray owner = owners.get(tex);
+        if (owner != null) {
+            return owner;
+        }
+
+        for (TextureArray array : arrays) {
+            if (array.width == tex.getWidth() && array.height == tex.getHeight()
+                    && array.sampling.equals(tex.getSampling()) && array.layers.size() < maxLayers()) {
+                owner = array;
+                break;
+            }
+        }
+        if (owner == null) {
+            owner = new TextureArray(tex.getWidth(), tex.getHeight(), tex.getSampling());
+            arrays.add(owner);
+        }
+
+        owner.add(tex);
+        owners.put(tex, owner);
+        return owner;
+    }
+
+    // The array already holding the texture, or null. Creates nothing, so it is safe off the GL thread.
+    static TextureArray ownerOf(Texture tex) {
+        return owners.get(tex);
+    }
+
+    private static int maxLayers() {
+        if (maxLayers < 0) {
+            maxLayers = Math.min(glGetInteger(GL_MAX_ARRAY_TEXTURE_LAYERS), MAX_ENCODABLE_LAYERS);
+        }
+        return maxLayers;
+    }
+
+    public int layerOf(Texture tex) {
+        return layers.indexOf(tex);
+    }
+
+    private void add(Texture tex) {
+        // Reuse the layer of a deleted texture first
+        int free = layers.indexOf(null);
+        if (free >= 0) {
+            layers.set(free, tex);
+            copyLayer(tex, free);
+        } else {
+            if (layers.size() == capacity) {
+                allocate(Math.min(capacity * 2, maxLayers()));
+            }
+            layers.add(tex);
+            copyLayer(tex, layers.size() - 1);
+        }
+        // Only level 0 is copied; the smaller levels are rebuilt from it
+        if (sampling.usesMipmaps()) {
+            GLState.bindTexture(GL_TEXTURE_2D_ARRAY, texID);
+            glGenerateMipmap(GL_TEXTURE_2D_ARRAY);
+        }
+    }
+
+    // Frees the texture's layer; called by Texture.delete()
+    static void textureDeleted(Texture tex) {
+        TextureArray owner = owners.remove(tex);
+        if (owner != null) {
+            owner.layers.set(owner.layers.indexOf(tex), null);
+        }
+    }
+
+    // (Re)creates the GL storage with room for the given number of layers and copies
+    // the layers added so far into it
+    private void allocate(int newCapacity) {
+        int oldID = texID;
+
+        texID = glGenTextures();
+        GLState.bindTexture(GL_TEXTURE_2D_ARRAY, texID);
+        // Used as is where there are no sampler objects; otherwise bind() sets the sampler
+        Samplers.applyToBoundTexture(GL_TEXTURE_2D_ARRAY, sampling);
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA8, width, height, newCapacity,
+                0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        capacity = newCapacity;
+
+        for (int i = 0; i < layers.size(); i++) {
+            if (layers.get(i) != null) {
+                copyLayer(layers.get(i), i);
+            }
+        }
+
+        if (oldID != 0) {
+            glDeleteTextures(oldID);
+            GLState.textureDeleted(oldID);
+        }
+    }
+
+    // Copies on the GPU when the formats are compatible, otherwise reads the texture
+    // back as RGBA (which decompresses compressed ones) and uploads it into the layer
+    private void copyLayer(Texture tex, int layer) {
+        if (GL.getCapabilities().OpenGL43 && tex.getChannels() == 4 && !tex.isCompressed()) {
+            glCopyImageSubData(tex.getId(), GL_TEXTURE_2D, 0, 0, 0, 0,
+                    texID, GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer,
+                    width, height, 1);
+            return;
+        }
+
+        ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+        tex.bind();
+        glGetTexImage(GL_TEXTURE_2D, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        tex.unbind();
+
+        GLState.bindTexture(GL_TEXTURE_2D_ARRAY, texID);
+        glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, width, height, 1,
+                GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+    }
+
+    public void bind() {
+        GLState.bindTexture(GL_TEXTURE_2D_ARRAY, texID);
+    }
+
+    // Binds to the given texture unit index, with the sampler of its textures
+    public void bind(int unit) {
+        GLState.bindTexture(unit, GL_TEXTURE_2D_ARRAY, texID);
+        if (Samplers.isSupported()) {
+            GLState.bindSampler(unit, Samplers.get(sampling));
+        }
+    }
+
+    public void unbind() {
+        GLState.bindTexture(GL_TEXTURE_2D_ARRAY, 0);
+    }
+
+    public int getWidth()  { return this.width; }
+    public int getHeight() { return this.height; }
+}
@@ -0,0 +1,322 @@
+package render;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL13.glCompressedTexImage2D;
+import static org.lwjgl.stb.STBDXT.STB_DXT_HIGHQUAL;
+import static org.lwjgl.stb.STBDXT.stb_compress_dxt_block;
+import static org.lwjgl.stb.STBImage.*;
+
+// Decodes images once and keeps them in a cache directory ready for upload: bottom row first
+// as GL expects, as RGBA8 or BC3 blocks, optionally with the whole mip chain. A baked file is
+// memory mapped and its levels handed to GL as they are. It records the SHA-256 of the image
+// it came from, and is baked again when the image's content no longer matches.
+//
+// Baked file, little-endian: magic, version, format, width, height, levels (ints), the source
+// hash (32 bytes), then every level from the largest down, with no padding.
+public class TextureBaker {
+    public enum Format {
+        RGBA8,
+        // DXT5: 4x4 blocks of 16 bytes, a quarter of RGBA8. Lossy, so not for pixel art.
+        // TextureArray reads it back decompressed to fill its RGBA8 layers.
+        BC3
+    }
+
+    private static final int MAGIC        = 0x31435854; // "TXC1"
+    private static final int VERSION      = 1;
+    private static final int HASH_BYTES   = 32;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES + HASH_BYTES;
+
+    private final Path cacheDir;
+    private final Format format;
+    private final boolean mipmaps;
+    // Bakes RGBA8 instead where the driver cannot decode BC3, created on first need
+    private TextureBaker uncompressed;
+
+    public TextureBaker(Path cacheDir, Format format, boolean mipmaps) {
+        this.cacheDir = cacheDir;
+        this.format   = format;
+        this.mipmaps  = mipmaps;
+    }
+
+    // Offline baking, so the first run does not pay for it either:
+    //   TextureBaker <cacheDir> <RGBA8|BC3> <mipmaps true|false> <image directories...>
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: TextureBaker <cacheDir> <RGBA8|BC3> <mipmaps> <imageDir...>");
+            System.exit(2);
+        }
+        TextureBaker baker = new TextureBaker(Paths.get(args[0]), Format.valueOf(args[1]), Boolean.parseBoolean(args[2]));
+        int count = 0;
+        for (int i = 3; i < args.length; i++) {
+            count += baker.bakeAll(Paths.get(args[i]));
+        }
+        System.out.println(count + " images baked into " + args[0]);
+    }
+
+    // Brings the baked file of every PNG under the directory up to date; returns how many there were
+    public int bakeAll(Path directory) throws IOException {
+        int count = 0;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".png"))::iterator) {
+                bake(file.toString());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Creates the texture from its baked file, baking it first when missing or stale. GL thread only.
+    public Texture load(String filePath) {
+        if (format == Format.BC3 && !GL.getCapabilities().GL_EXT_texture_compression_s3tc) {
+            if (uncompressed == null) {
+                System.err.println("Warning: (TextureBaker) No S3TC support, baking RGBA8 instead of BC3");
+                uncompressed = new TextureBaker(cacheDir, Format.RGBA8, mipmaps);
+            }
+            return uncompressed.load(filePath);
+        }
+
+        ByteBuffer baked;
+        try {
+            baked = bake(filePath);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error: (TextureBaker) Could not load image '" + filePath + "'", e);
+        }
+        return upload(filePath, baked);
+    }
+
+    // The baked contents for the image, up to date with it. Rewrites the baked file if needed;
+    // if that fails the freshly baked contents are still returned.
+    public ByteBuffer bake(String filePath) throws IOException {
+        ByteBuffer source = map(Paths.get(filePath));
+        byte[] hash = sha256(source.duplicate());
+
+        Path bakedPath = bakedPath(filePath);
+        if (Files.exists(bakedPath)) {
+            ByteBuffer baked = map(bakedPath).order(ByteOrder.LITTLE_ENDIAN);
+            if (isCurrent(baked, hash)) {
+                return baked;
+            }
+        }
+
+        ByteBuffer baked = encode(filePath, source, hash);
+        try {
+            write(bakedPath, baked);
+        } catch (IOException e) {
+            System.err.println("Warning: (TextureBaker) Could not write '" + bakedPath + "': " + e.getMessage());
+        }
+        return baked;
+    }
+
+    // Flat directory, named after the image and a hash of its full path to keep names unique.
+    // Each format has its own file, so a BC3 cache and its RGBA8 fallback do not replace each other.
+    private Path bakedPath(String filePath) {
+        Path absolute = Paths.get(filePath).toAbsolutePath().normalize();
+        String name = absolute.getFileName() + "-" + Integer.toHexString(absolute.toString().hashCode())
+                + "." + format.name().toLowerCase(Locale.ROOT) + ".tex";
+        return cacheDir.resolve(name);
+    }
+
+    // The header has to match and the file has to hold every level it announces; a truncated
+    // file would otherwise have GL read past the end of the mapping
+    private boolean isCurrent(ByteBuffer baked, byte[] hash) {
+        if (baked.capacity() < HEADER_BYTES
+                || baked.getInt(0) != MAGIC || baked.getInt(4) != VERSION
+                || baked.getInt(8) != format.ordinal() || (baked.getInt(20) > 1) != mipmaps) {
+            return false;
+        }
+        for (int i = 0; i < HASH_BYTES; i++) {
+            if (baked.get(24 + i) != hash[i]) {
+                return false;
+            }
+        }
+
+        int w = baked.getInt(12);
+        int h = baked.getInt(16);
+        int levels = baked.getInt(20);
+        if (w <= 0 || h <= 0 || w > 65536 || h > 65536 || levels <= 0 || levels > 32) {
+            return false;
+        }
+        long expected = HEADER_BYTES;
+        for (int l = 0; l < levels; l++) {
+            expected += levelBytes(format, w, h);
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+        }
+        return baked.capacity() == expected;
+    }
+
+    private ByteBuffer encode(String filePath, ByteBuffer source, byte[] hash) {
+        IntBuffer width    = BufferUtils.createIntBuffer(1);
+        IntBuffer height   = BufferUtils.createIntBuffer(1);
+        IntBuffer channels = BufferUtils.createIntBuffer(1);
+        stbi_set_flip_vertically_on_load_thread(true);
+        ByteBuffer image = stbi_load_from_memory(source, width, height, channels, 4);
+        if (image == null) {
+            throw new IllegalStateException("Error: (TextureBaker) Could not decode image '" + filePath + "': " + stbi_failure_reason());
+        }
+
+        // RGBA8 levels, each half the size of the one before, down to 1x1
+        List<ByteBuffer> levels = new ArrayList<>();
+        List<int[]> sizes = new ArrayList<>();
+        int w = width.get(0);
+        int h = height.get(0);
+        levels.add(image);
+        sizes.add(new int[]{w, h});
+        while (mipmaps && (w > 1 || h > 1)) {
+            ByteBuffer next = downsample(levels.get(levels.size() - 1), w, h);
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+            levels.add(next);
+            sizes.add(new int[]{w, h});
+        }
+
+        int total = HEADER_BYTES;
+        for (int[] size : sizes) {
+            total += levelBytes(format, size[0], size[1]);
+        }
+        ByteBuffer baked = BufferUtils.createByteBuffer(total).order(ByteOrder.LITTLE_ENDIAN);
+        baked.putInt(MAGIC).putInt(VERSION).putInt(format.ordinal())
+                .putInt(width.get(0)).putInt(height.get(0)).putInt(levels.size())
+                .put(hash);
+        for (int l = 0; l < levels.size(); l++) {
+            int[] size = sizes.get(l);
+            if (format == Format.BC3) {
+                compressBC3(levels.get(l), size[0], size[1], baked);
+            } else {
+                baked.put(levels.get(l).duplicate());
+            }
+        }
+        baked.flip();
+
+        stbi_image_free(image);
+        return baked;
+    }
+
+    private static int levelBytes(Format format, int width, int height) {
+        if (format == Format.BC3) {
+            return ((width + 3) / 4) * ((height + 3) / 4) * 16;
+        }
+        return width * height * 4;
+    }
+
+    // 2x2 box filter; odd edges repeat their last row or column
+    private static ByteBuffer downsample(ByteBuffer src, int width, int height) {
+        int w = Math.max(1, width / 2);
+        int h = Math.max(1, height / 2);
+        ByteBuffer dst = BufferUtils.createByteBuffer(w * h * 4);
+        for (int y = 0; y < h; y++) {
+            int y0 = Math.min(2 * y, height - 1);
+            int y1 = Math.min(2 * y + 1, height - 1);
+            for (int x = 0; x < w; x++) {
+                int x0 = Math.min(2 * x, width - 1);
+                int x1 = Math.min(2 * x + 1, width - 1);
+                for (int c = 0; c < 4; c++) {
+                    int sum = (src.get((y0 * width + x0) * 4 + c) & 0xFF) + (src.get((y0 * width + x1) * 4 + c) & 0xFF)
+                            + (src.get((y1 * width + x0) * 4 + c) & 0xFF) + (src.get((y1 * width + x1) * 4 + c) & 0xFF);
+                    dst.put((y * w + x) * 4 + c, (byte) ((sum + 2) / 4));
+                }
+            }
+        }
+        return dst;
+    }
+
+    // Appends the level's 4x4 blocks to out, row by row; partial blocks repeat the edge pixels
+    private static void compressBC3(ByteBuffer src, int width, int height, ByteBuffer out) {
+        ByteBuffer block = BufferUtils.createByteBuffer(16 * 4);
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                for (int p = 0; p < 16; p++) {
+                    int x = Math.min(bx + p % 4, width - 1);
+                    int y = Math.min(by + p / 4, height - 1);
+                    for (int c = 0; c < 4; c++) {
+                        block.put(p * 4 + c, src.get((y * width + x) * 4 + c));
+                    }
+                }
+                stb_compress_dxt_block(out.slice(out.position(), 16), block, true, STB_DXT_HIGHQUAL);
+                out.position(out.position() + 16);
+            }
+        }
+    }
+
+    private Texture upload(String filePath, ByteBuffer baked) {
+        baked.order(ByteOrder.LITTLE_ENDIAN);
+        Format bakedFormat = Format.values()[baked.getInt(8)];
+        int width  = baked.getInt(12);
+        int height = baked.getInt(16);
+        int levels = baked.getInt(20);
+
+        int internalFormat = bakedFormat == Format.BC3 ? GL_COMPRESSED_RGBA_S3TC_DXT5_EXT : GL_RGBA8;
+        Texture texture = Texture.allocate(filePath, width, height, internalFormat);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        int offset = HEADER_BYTES;
+        int w = width, h = height;
+        for (int l = 0; l < levels; l++) {
+            int size = levelBytes(bakedFormat, w, h);
+            ByteBuffer level = baked.slice(offset, size);
+            if (bakedFormat == Format.BC3) {
+                glCompressedTexImage2D(GL_TEXTURE_2D, l, GL_COMPRESSED_RGBA_S3TC_DXT5_EXT, w, h, 0, level);
+            } else {
+                glTexImage2D(GL_TEXTURE_2D, l, GL_RGBA8, w, h, 0, GL_RGBA, GL_UNSIGNED_BYTE, level);
+            }
+            offset += size;
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+        }
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, levels - 1);
+        if (levels > 1) {
+            texture.markMipmapped();
+        }
+        return texture;
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Written next to the target and moved in place, so a crash never leaves half a file
+    private static void write(Path file, ByteBuffer data) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer remaining = data.duplicate();
+            while (remaining.hasRemaining()) {
+                channel.write(remaining);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] sha256(ByteBuffer data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Error: (TextureBaker) SHA-256 not available", e);
+        }
+    }
+}
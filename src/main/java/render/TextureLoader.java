@@ -0,0 +1,281 @@
+package render;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.stb.STBImage.*;
+
+// Loads textures without stalling the GL thread: images are decoded on a pool of worker
+// threads, and the GL thread uploads finished ones in uploadPending(), a few per frame.
+// Until then the texture is a transparent placeholder that can already be given to sprites.
+//
+// With pixel buffers the GL thread only maps a buffer for each decoded image; a worker copies
+// the pixels into the mapping, and a later uploadPending() unmaps it and starts the transfer
+// from the buffer, which the driver can do asynchronously.
+public class TextureLoader {
+    private static final int DECODE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    // A texture on its way: decode runs on the pool, the rest belongs to the GL thread
+    private static class Request {
+        final Texture texture;
+        final CompletableFuture<Image> decode;
+        final CompletableFuture<Texture> loaded = new CompletableFuture<>();
+        // Pixel buffer the image is being copied into, and that copy; GL thread only
+        int pbo = 0;
+        CompletableFuture<Void> copy;
+
+        Request(Texture texture, CompletableFuture<Image> decode) {
+            this.texture = texture;
+            this.decode  = decode;
+        }
+    }
+
+    private static class Image {
+        final int width, height, channels;
+        final ByteBuffer pixels;
+
+        Image(int width, int height, int channels, ByteBuffer pixels) {
+            this.width    = width;
+            this.height   = height;
+            this.channels = channels;
+            this.pixels   = pixels;
+        }
+    }
+
+    private static final ExecutorService decoders = Executors.newFixedThreadPool(DECODE_THREADS, r -> {
+        Thread thread = new Thread(r, "texture-decode");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Decoded (or failed) requests, in completion order, waiting for the GL thread
+    private static final ConcurrentLinkedQueue<Request> decoded = new ConcurrentLinkedQueue<>();
+    // Requests whose pixels were copied into their pixel buffer, ready to be unmapped and uploaded
+    private static final ConcurrentLinkedQueue<Request> copied = new ConcurrentLinkedQueue<>();
+    // GL thread only
+    private static final Map<Texture, Request> pending = new HashMap<>();
+
+    // Uploads go through pixel unpack buffers, so the driver can copy to the GPU asynchronously.
+    // Each image in flight holds one of them mapped, so at most PIXEL_BUFFERS are staged at once.
+    private static final int PIXEL_BUFFERS = 2;
+    private static boolean pixelBuffer = false;
+    private static int[] freeBuffers;
+    private static int freeCount = 0;
+
+    private TextureLoader() {}
+
+    // Returns the placeholder at once and starts decoding. GL thread only.
+    public static Texture load(String filePath) {
+        Texture texture = Texture.pending(filePath);
+        CompletableFuture<Image> decode = CompletableFuture.supplyAsync(() -> decode(filePath), decoders);
+        Request request = new Request(texture, decode);
+        pending.put(texture, request);
+        decode.whenComplete((image, error) -> decoded.add(request));
+        return texture;
+    }
+
+    private static Image decode(String filePath) {
+        IntBuffer width    = BufferUtils.createIntBuffer(1);
+        IntBuffer height   = BufferUtils.createIntBuffer(1);
+        IntBuffer channels = BufferUtils.createIntBuffer(1);
+
+        // The global flip flag belongs to the GL thread's loads; this one only affects the calling thread
+        stbi_set_flip_vertically_on_load_thread(true);
+        ByteBuffer image = stbi_load(filePath, width, height, channels, 0);
+        if (image == null) {
+            throw new IllegalStateException("Error: (TextureLoader) Could not load image '" + filePath + "': " + stbi_failure_reason());
+        }
+        return new Image(width.get(0), height.get(0), channels.get(0), image);
+    }
+
+    // Completes on the GL thread once the image is uploaded, so callbacks may use GL.
+    // Fails if the image could not be decoded; the texture then stays a placeholder.
+    public static CompletableFuture<Texture> whenLoaded(Texture texture) {
+        Request request = pending.get(texture);
+        if (request != null) {
+            return request.loaded;
+        }
+        return CompletableFuture.completedFuture(texture);
+    }
+
+    // Uploads decoded textures until budgetNanos have been spent; at least one is uploaded
+    // whenever any is ready, so a large image cannot hold up the queue. Call once per frame.
+    public static void uploadPending(long budgetNanos) {
+        long start = System.nanoTime();
+        Request request;
+        while ((request = copied.poll()) != null) {
+            uploadStaged(request);
+            if (System.nanoTime() - start >= budgetNanos) {
+                return;
+            }
+        }
+        if (pixelBuffer) {
+            // Mapping takes little time, so every free buffer is put to work
+            createBuffers();
+            while (freeCount > 0 && (request = decoded.poll()) != null) {
+                stage(request);
+            }
+            return;
+        }
+        while ((request = decoded.poll()) != null) {
+            upload(request);
+            if (System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+    }
+
+    // Waits for the texture's decode and uploads it right away. GL thread only.
+    public static void finish(Texture texture) {
+        Request request = pending.get(texture);
+        if (request == null) {
+            return;
+        }
+        try {
+            request.decode.join();
+        } catch (CompletionException e) {
+            // Reported through request.loaded by upload()
+        }
+        if (request.pbo != 0) {
+            try {
+                request.copy.join();
+            } catch (CompletionException e) {
+                // uploadStaged() falls back to the decoded pixels
+            }
+            copied.remove(request);
+            uploadStaged(request);
+        } else {
+            decoded.remove(request);
+            upload(request);
+        }
+    }
+
+    // Uploads straight from the decoded pixels
+    private static void upload(Request request) {
+        Image image = takeImage(request);
+        if (image == null) {
+            return;
+        }
+        request.texture.upload(image.width, image.height, image.channels, image.pixels);
+        stbi_image_free(image.pixels);
+        request.loaded.complete(request.texture);
+    }
+
+    // Maps a free pixel buffer for the decoded image and has a worker copy the pixels into it
+    private static void stage(Request request) {
+        if (!pending.containsKey(request.texture)) {
+            // Already finished
+            return;
+        }
+        Image image;
+        try {
+            image = request.decode.join();
+        } catch (CompletionException e) {
+            upload(request);
+            return;
+        }
+        if (request.texture.isDeleted()) {
+            upload(request);
+            return;
+        }
+
+        int pbo = freeBuffers[--freeCount];
+        long size = image.pixels.remaining();
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, pbo);
+        // Invalidating lets the driver hand out fresh memory instead of waiting for the last transfer
+        glBufferData(GL_PIXEL_UNPACK_BUFFER, size, GL_STREAM_DRAW);
+        ByteBuffer mapping = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, size, GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_BUFFER_BIT);
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+        if (mapping == null) {
+            freeBuffers[freeCount++] = pbo;
+            upload(request);
+            return;
+        }
+
+        request.pbo  = pbo;
+        request.copy = CompletableFuture.runAsync(() -> mapping.put(image.pixels.duplicate()), decoders);
+        request.copy.whenComplete((v, error) -> copied.add(request));
+    }
+
+    // Unmaps the request's pixel buffer and uploads the texture from it
+    private static void uploadStaged(Request request) {
+        if (request.pbo == 0) {
+            // Already finished
+            return;
+        }
+        int pbo = request.pbo;
+        request.pbo = 0;
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, pbo);
+        // False when the mapping's contents were lost (e.g. a display mode change)
+        boolean intact = glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER) && !request.copy.isCompletedExceptionally();
+
+        Image image = takeImage(request);
+        if (image != null && intact) {
+            request.texture.upload(image.width, image.height, image.channels, 0L);
+        }
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+        freeBuffers[freeCount++] = pbo;
+        if (image == null) {
+            return;
+        }
+        if (!intact) {
+            request.texture.upload(image.width, image.height, image.channels, image.pixels);
+        }
+        stbi_image_free(image.pixels);
+        request.loaded.complete(request.texture);
+    }
+
+    // Ends the request's pending state and returns its image, or null when there is nothing to
+    // upload: already finished, failed to decode, or the texture was deleted in the meantime
+    private static Image takeImage(Request request) {
+        if (pending.remove(request.texture) == null) {
+            return null;
+        }
+        Image image;
+        try {
+            image = request.decode.join();
+        } catch (CompletionException e) {
+            request.loaded.completeExceptionally(e.getCause());
+            return null;
+        }
+        if (request.texture.isDeleted()) {
+            stbi_image_free(image.pixels);
+            request.loaded.completeExceptionally(new IllegalStateException(
+                    "Error: (TextureLoader) Texture '" + request.texture.getFilePath() + "' was deleted before it was loaded"));
+            return null;
+        }
+        return image;
+    }
+
+    private static void createBuffers() {
+        if (freeBuffers == null) {
+            freeBuffers = new int[PIXEL_BUFFERS];
+            for (int i = 0; i < PIXEL_BUFFERS; i++) {
+                freeBuffers[i] = glGenBuffers();
+            }
+            freeCount = PIXEL_BUFFERS;
+        }
+    }
+
+    // Takes effect for images decoded from now on; those already staged finish as they are
+    public static void setPixelBuffer(boolean pixelBuffer) {
+        TextureLoader.pixelBuffer = pixelBuffer;
+    }
+
+    // Textures still waiting to be uploaded
+    public static int getPendingCount() {
+        return pending.size();
+    }
+}
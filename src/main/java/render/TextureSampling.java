@@ -0,0 +1,64 @@
+package render;
+
+import java.util.Objects;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+
+// How a texture is sampled: filters, wrap mode and anisotropy. Immutable, so equal settings
+// share one GL sampler object (see Samplers). Mipmapped min filters make Texture generate
+// the mip chain, so zoomed-out sprites read a small level instead of skipping across texels.
+public final class TextureSampling {
+    // Sharp texels at any zoom, the engine's historical look; aliases when zoomed out
+    public static final TextureSampling PIXEL_ART = new TextureSampling(GL_NEAREST, GL_NEAREST, GL_REPEAT, 1.0f);
+    // Sharp when zoomed in, blended from the mip chain when zoomed out
+    public static final TextureSampling PIXEL_ART_MIPMAPPED = new TextureSampling(GL_LINEAR_MIPMAP_LINEAR, GL_NEAREST, GL_REPEAT, 1.0f);
+    // Trilinear with anisotropy, for painted and high-resolution art
+    public static final TextureSampling SMOOTH = new TextureSampling(GL_LINEAR_MIPMAP_LINEAR, GL_LINEAR, GL_REPEAT, 8.0f);
+
+    private final int minFilter;
+    private final int magFilter;
+    private final int wrap;
+    // 1 disables anisotropic filtering; clamped to what the driver supports
+    private final float maxAnisotropy;
+    private final int hash;
+
+    public TextureSampling(int minFilter, int magFilter, int wrap, float maxAnisotropy) {
+        this.minFilter     = minFilter;
+        this.magFilter     = magFilter;
+        this.wrap          = wrap;
+        this.maxAnisotropy = maxAnisotropy;
+        this.hash          = Objects.hash(minFilter, magFilter, wrap, maxAnisotropy);
+    }
+
+    // Same settings with another wrap mode, e.g. GL_CLAMP_TO_EDGE for atlas pages
+    public TextureSampling withWrap(int wrap) {
+        return new TextureSampling(minFilter, magFilter, wrap, maxAnisotropy);
+    }
+
+    public TextureSampling clamped() {
+        return withWrap(GL_CLAMP_TO_EDGE);
+    }
+
+    public boolean usesMipmaps() {
+        return minFilter != GL_NEAREST && minFilter != GL_LINEAR;
+    }
+
+    public int getMinFilter()       { return this.minFilter; }
+    public int getMagFilter()       { return this.magFilter; }
+    public int getWrap()            { return this.wrap; }
+    public float getMaxAnisotropy() { return this.maxAnisotropy; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TextureSampling)) return false;
+        TextureSampling s = (TextureSampling) o;
+        return minFilter == s.minFilter && magFilter == s.magFilter && wrap == s.wrap
+                && Float.compare(maxAnisotropy, s.maxAnisotropy) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,190 @@
+package render;
+
+import org.joml.Vector2f;
+import org.joml.Vector4f;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+// Memory layouts a RenderBatch can use for its sprites. The per-vertex formats feed the same
+// shader inputs: normalized integer attributes are converted to floats by the vertex fetch,
+// so default.glsl reads aColor/aTexCoords/aTexId the same way in either of them.
+public enum VertexFormat {
+    // Pos(2 float) | Color(4 float) | TexCoords(2 float) | TexId(1 float) = 36 bytes
+    STANDARD(36, false, false) {
+        @Override
+        void enableAttributes() {
+            attribute(0, 2, GL_FLOAT, false, 0);
+            attribute(1, 4, GL_FLOAT, false, 8);
+            attribute(2, 2, GL_FLOAT, false, 24);
+            attribute(3, 1, GL_FLOAT, false, 32);
+        }
+
+        @Override
+        void putSprite(ByteBuffer buf, int offset, float x, float y, float width, float height,
+                       Vector4f color, Vector2f[] texCoords, int texId) {
+            for (int i = 0; i < 4; i++) {
+                putVertex(buf, offset + i * strideBytes, x + CORNER_X[i] * width, y + CORNER_Y[i] * height,
+                        color, texCoords[i].x, texCoords[i].y, texId);
+            }
+        }
+
+        private void putVertex(ByteBuffer buf, int offset, float x, float y, Vector4f color, float u, float v, int texId) {
+            buf.putFloat(offset,      x);
+            buf.putFloat(offset + 4,  y);
+            buf.putFloat(offset + 8,  color.x);
+            buf.putFloat(offset + 12, color.y);
+            buf.putFloat(offset + 16, color.z);
+            buf.putFloat(offset + 20, color.w);
+            buf.putFloat(offset + 24, u);
+            buf.putFloat(offset + 28, v);
+            buf.putFloat(offset + 32, texId);
+        }
+    },
+
+    // Pos(2 float) | Color(4 ubyte, normalized) | TexCoords(2 ushort, normalized) | TexId(1 ushort) + 2 bytes padding = 20 bytes
+    // Texture coordinates are limited to [0, 1] (see canPack); attributes stay 4-byte aligned, so the tex id gets 16 bits for free.
+    COMPACT(20, false, true) {
+        @Override
+        void enableAttributes() {
+            attribute(0, 2, GL_FLOAT,          false, 0);
+            attribute(1, 4, GL_UNSIGNED_BYTE,  true,  8);
+            attribute(2, 2, GL_UNSIGNED_SHORT, true,  12);
+            attribute(3, 1, GL_UNSIGNED_SHORT, false, 16);
+        }
+
+        @Override
+        void putSprite(ByteBuffer buf, int offset, float x, float y, float width, float height,
+                       Vector4f color, Vector2f[] texCoords, int texId) {
+            assert canPack(texCoords) : "Error: (VertexFormat) COMPACT cannot hold texture coordinates outside [0, 1]";
+            for (int i = 0; i < 4; i++) {
+                putVertex(buf, offset + i * strideBytes, x + CORNER_X[i] * width, y + CORNER_Y[i] * height,
+                        color, texCoords[i].x, texCoords[i].y, texId);
+            }
+        }
+
+        private void putVertex(ByteBuffer buf, int offset, float x, float y, Vector4f color, float u, float v, int texId) {
+            buf.putFloat(offset,     x);
+            buf.putFloat(offset + 4, y);
+            buf.put(offset + 8,  unorm8(color.x));
+            buf.put(offset + 9,  unorm8(color.y));
+            buf.put(offset + 10, unorm8(color.z));
+            buf.put(offset + 11, unorm8(color.w));
+            buf.putShort(offset + 12, unorm16(u));
+            buf.putShort(offset + 14, unorm16(v));
+            buf.putShort(offset + 16, (short) texId);
+            buf.putShort(offset + 18, (short) 0);
+        }
+    },
+
+    // One record per sprite, expanded over a shared unit quad by glDrawElementsInstanced:
+    // Pos(2 float) | Scale(2 float) | Color(4 ubyte, normalized) | UvRect(4 ushort, normalized) | TexId(1 ushort) + 2 bytes padding = 32 bytes
+    // The UV rect holds the texture coordinates of the bottom-left and top-right corners.
+    INSTANCED(32, true, true) {
+        @Override
+        void enableAttributes() {
+            attribute(1, 2, GL_FLOAT,          false, 0);
+            attribute(2, 2, GL_FLOAT,          false, 8);
+            attribute(3, 4, GL_UNSIGNED_BYTE,  true,  16);
+            attribute(4, 4, GL_UNSIGNED_SHORT, true,  20);
+            attribute(5, 1, GL_UNSIGNED_SHORT, false, 28);
+            for (int i = 1; i <= 5; i++) {
+                glVertexAttribDivisor(i, 1);
+            }
+        }
+
+        @Override
+        void putSprite(ByteBuffer buf, int offset, float x, float y, float width, float height,
+                       Vector4f color, Vector2f[] texCoords, int texId) {
+            assert canPack(texCoords) : "Error: (VertexFormat) INSTANCED cannot hold texture coordinates outside [0, 1]";
+            buf.putFloat(offset,      x);
+            buf.putFloat(offset + 4,  y);
+            buf.putFloat(offset + 8,  width);
+            buf.putFloat(offset + 12, height);
+            buf.put(offset + 16, unorm8(color.x));
+            buf.put(offset + 17, unorm8(color.y));
+            buf.put(offset + 18, unorm8(color.z));
+            buf.put(offset + 19, unorm8(color.w));
+            buf.putShort(offset + 20, unorm16(texCoords[2].x));
+            buf.putShort(offset + 22, unorm16(texCoords[2].y));
+            buf.putShort(offset + 24, unorm16(texCoords[0].x));
+            buf.putShort(offset + 26, unorm16(texCoords[0].y));
+            buf.putShort(offset + 28, (short) texId);
+            buf.putShort(offset + 30, (short) 0);
+        }
+    };
+
+    // Corners of a per-vertex sprite as fractions of its size: top right, bottom right,
+    // bottom left, top left, matching the order of its texture coordinates
+    private static final float[] CORNER_X = {1.0f, 1.0f, 0.0f, 0.0f};
+    private static final float[] CORNER_Y = {1.0f, 0.0f, 0.0f, 1.0f};
+
+    // Size of one vertex, or of one instance record for instanced formats
+    public final int strideBytes;
+    public final boolean instanced;
+    // Bytes one sprite takes in the vertex buffer
+    public final int spriteSizeBytes;
+    // Texture coordinates are stored as unorm16, so only [0, 1] survives packing
+    public final boolean unitTexCoords;
+
+    VertexFormat(int strideBytes, boolean instanced, boolean unitTexCoords) {
+        this.strideBytes     = strideBytes;
+        this.instanced       = instanced;
+        this.spriteSizeBytes = instanced ? strideBytes : 4 * strideBytes;
+        this.unitTexCoords   = unitTexCoords;
+    }
+
+    // Whether the sprite's texture coordinates survive packing unchanged. Sprites that fail
+    // this (tiling or mirrored UVs) are drawn from STANDARD batches instead.
+    public boolean canPack(Vector2f[] texCoords) {
+        if (!unitTexCoords) {
+            return true;
+        }
+        for (Vector2f uv : texCoords) {
+            if (!inUnitRange(uv.x) || !inUnitRange(uv.y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same check for the eight floats of a snapshot sprite starting at offset
+    public boolean canPack(float[] texCoords, int offset) {
+        if (!unitTexCoords) {
+            return true;
+        }
+        for (int i = offset; i < offset + 8; i++) {
+            if (!inUnitRange(texCoords[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean inUnitRange(float value) {
+        return value >= 0.0f && value <= 1.0f;
+    }
+
+    // Sets up the vertex attribute pointers for the currently bound VAO and VBO
+    abstract void enableAttributes();
+
+    // Writes one sprite at the given byte offset. Per-vertex formats expand it into
+    // the four corners (CORNER_X/CORNER_Y), in the order the batch's index buffer expects.
+    abstract void putSprite(ByteBuffer buf, int offset, float x, float y, float width, float height,
+                            Vector4f color, Vector2f[] texCoords, int texId);
+
+    void attribute(int index, int size, int type, boolean normalized, int offsetBytes) {
+        glVertexAttribPointer(index, size, type, normalized, strideBytes, offsetBytes);
+        glEnableVertexAttribArray(index);
+    }
+
+    private static byte unorm8(float value) {
+        return (byte) Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 255.0f);
+    }
+
+    private static short unorm16(float value) {
+        return (short) Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 65535.0f);
+    }
+}
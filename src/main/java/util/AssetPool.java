@@ -1,43 +1,76 @@
 package util;
 
 import components.SpriteSheet;
+import components.TextureAtlas;
 import render.Shader;
 import render.Texture;
+import render.TextureBaker;
 
 import java.io.File;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class AssetPool {
     private static Map<String, Shader> shaders = new HashMap<>();
-    private static Map<String, Texture> textures = new HashMap<>();
+    // Default GPU memory for cached textures; unreferenced ones are evicted beyond it
+    private static final long TEXTURE_BUDGET_BYTES = 256L * 1024 * 1024;
+    private static TextureCache textures = new TextureCache(TEXTURE_BUDGET_BYTES);
+    // Images are decoded on first use only; later runs map the baked copy from here
+    private static final String TEXTURE_BAKE_DIR = ".cache/textures";
+
+    static {
+        textures.setBaker(new TextureBaker(Paths.get(TEXTURE_BAKE_DIR), TextureBaker.Format.RGBA8, false));
+    }
     private static Map<String, SpriteSheet> spriteSheets = new HashMap<>();
+    private static Map<String, TextureAtlas> atlases = new HashMap<>();
 
-    public static Shader getShader(String resourceName) {
+    // Each set of defines is compiled and cached as its own variant of the file
+    public static Shader getShader(String resourceName, String... defines) {
         File file = new File(resourceName);
-        String filePath = file.getAbsolutePath();
+        String key = file.getAbsolutePath();
+        if (defines.length > 0) {
+            key += "#" + String.join(",", defines);
+        }
 
-        if (shaders.containsKey(filePath)) {
-            return shaders.get(filePath);
+        if (shaders.containsKey(key)) {
+            return shaders.get(key);
         } else {
-            Shader shader = new Shader(resourceName);
+            Shader shader = new Shader(resourceName, defines);
             shader.compileAndLinkShaders();
-            shaders.put(filePath, shader);
+            shaders.put(key, shader);
             return shader;
         }
     }
 
+    // Holds the texture for as long as the pool lives; use acquireTexture for textures that
+    // may be evicted once released
     public static Texture getTexture(String resourceName) {
-        File file = new File(resourceName);
-        String filePath = file.getAbsolutePath();
+        return acquireTexture(resourceName).texture();
+    }
 
-        if (textures.containsKey(filePath)) {
-            return textures.get(filePath);
-        } else {
-            Texture texture = new Texture(resourceName);
-            textures.put(filePath, texture);
-            return texture;
-        }
+    // Returns at once with a placeholder that becomes the image once it is decoded and
+    // uploaded; TextureLoader.whenLoaded tells when. With Renderer.setTextureArrays, sprites
+    // using it are only batched once it is loaded.
+    // Like getTexture, the texture is held for as long as the pool lives.
+    public static Texture getTextureAsync(String resourceName) {
+        return acquireTextureAsync(resourceName).texture();
+    }
+
+    // A counted reference to the texture. Once every handle to it is released it may be
+    // deleted to keep within the cache's budget, so sprites must stop using it by then.
+    public static TextureCache.Handle acquireTexture(String resourceName) {
+        return textures.acquire(new File(resourceName).getAbsolutePath(), resourceName, false);
+    }
+
+    public static TextureCache.Handle acquireTextureAsync(String resourceName) {
+        return textures.acquire(new File(resourceName).getAbsolutePath(), resourceName, true);
+    }
+
+    // Budget, usage and hit/miss/eviction counts of the texture cache
+    public static TextureCache textureCache() {
+        return textures;
     }
 
     public static void addSpriteSheet(String name, SpriteSheet sprSheet){
@@ -54,4 +87,19 @@ public class AssetPool {
         }
         return AssetPool.spriteSheets.getOrDefault(file.getAbsolutePath(), null);
     }
+
+    // Packs the images into an atlas once and keeps it under the given name
+    public static TextureAtlas getTextureAtlas(String name, int pageSize, int padding, String... imagePaths) {
+        if (!atlases.containsKey(name)) {
+            atlases.put(name, new TextureAtlas(List.of(imagePaths), pageSize, padding));
+        }
+        return atlases.get(name);
+    }
+
+    public static TextureAtlas getTextureAtlas(String name) {
+        if (!atlases.containsKey(name)) {
+            assert false: "Texture atlas not found, not added to asset pool";
+        }
+        return atlases.getOrDefault(name, null);
+    }
 }
\ No newline at end of file
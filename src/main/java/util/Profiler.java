@@ -0,0 +1,197 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// CPU frame profiler. Code marks zones with begin(name)/end() pairs, which may nest and may
+// run on any thread. Per zone it keeps the time spent in the last HISTORY frames for the
+// overlay, and while a capture is running every zone instance is also recorded as an event
+// that can be saved in Chrome's trace format (chrome://tracing, Perfetto).
+public class Profiler {
+    public static final int HISTORY = 240;
+
+    // Time spent in one zone name, summed over a frame
+    public static class Zone {
+        private final String name;
+        private long frameNanos;
+        private final float[] historyMs = new float[HISTORY];
+
+        private Zone(String name) {
+            this.name = name;
+        }
+
+        // Copy of the zone, its history rotated so the oldest frame comes first. Caller holds the lock.
+        private Zone snapshot() {
+            Zone copy = new Zone(name);
+            copyHistory(historyMs, copy.historyMs);
+            return copy;
+        }
+
+        public String getName()         { return this.name; }
+        // Oldest frame first, on zones returned by getZones()
+        public float[] getHistoryMs()   { return this.historyMs; }
+        public float getLastMs()        { return historyMs[HISTORY - 1]; }
+    }
+
+    private static volatile boolean enabled = false;
+
+    private static final Map<String, Zone> zones = new HashMap<>();
+    private static final List<Zone> zoneList = new ArrayList<>();
+    private static final float[] frameHistoryMs = new float[HISTORY];
+    private static int cursor = 0;
+    private static long frameStart = 0;
+
+    // Open zones of each thread: start time, paired with the name on the name stack
+    private static final ThreadLocal<ArrayDeque<String>> openNames = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final ThreadLocal<long[]> openStarts = ThreadLocal.withInitial(() -> new long[64]);
+
+    // Trace capture: one event per closed zone, as parallel arrays
+    private static boolean capturing = false;
+    private static long captureStart;
+    private static int eventCount;
+    private static String[] eventNames = new String[0];
+    private static long[] eventStarts  = new long[0];
+    private static long[] eventEnds    = new long[0];
+    private static long[] eventThreads = new long[0];
+
+    private Profiler() {}
+
+    public static void setEnabled(boolean enabled) {
+        Profiler.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Closes the frame: every zone's total goes into its history and starts again from zero
+    public static synchronized void beginFrame() {
+        long now = System.nanoTime();
+        if (frameStart != 0) {
+            frameHistoryMs[cursor] = (now - frameStart) / 1e6f;
+            for (Zone zone : zoneList) {
+                zone.historyMs[cursor] = zone.frameNanos / 1e6f;
+                zone.frameNanos = 0;
+            }
+            cursor = (cursor + 1) % HISTORY;
+        }
+        frameStart = now;
+    }
+
+    public static void begin(String name) {
+        if (!enabled) {
+            return;
+        }
+        ArrayDeque<String> names = openNames.get();
+        long[] starts = openStarts.get();
+        if (names.size() == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * starts.length);
+            openStarts.set(starts);
+        }
+        starts[names.size()] = System.nanoTime();
+        names.push(name);
+    }
+
+    public static void end() {
+        if (!enabled) {
+            return;
+        }
+        ArrayDeque<String> names = openNames.get();
+        if (names.isEmpty()) {
+            // Profiling was switched on inside a zone
+            return;
+        }
+        String name = names.pop();
+        long start  = openStarts.get()[names.size()];
+        record(name, start, System.nanoTime());
+    }
+
+    private static synchronized void record(String name, long start, long end) {
+        Zone zone = zones.get(name);
+        if (zone == null) {
+            zone = new Zone(name);
+            zones.put(name, zone);
+            zoneList.add(zone);
+        }
+        zone.frameNanos += end - start;
+
+        if (capturing) {
+            if (eventCount == eventNames.length) {
+                int capacity = Math.max(1024, 2 * eventCount);
+                eventNames   = Arrays.copyOf(eventNames, capacity);
+                eventStarts  = Arrays.copyOf(eventStarts, capacity);
+                eventEnds    = Arrays.copyOf(eventEnds, capacity);
+                eventThreads = Arrays.copyOf(eventThreads, capacity);
+            }
+            eventNames[eventCount]   = name;
+            eventStarts[eventCount]  = start;
+            eventEnds[eventCount]    = end;
+            eventThreads[eventCount] = Thread.currentThread().getId();
+            eventCount++;
+        }
+    }
+
+    // Copies of the zones, taken under the lock record() writes them under, so the simulation
+    // thread cannot change them while they are drawn
+    public static synchronized List<Zone> getZones() {
+        List<Zone> copies = new ArrayList<>(zoneList.size());
+        for (Zone zone : zoneList) {
+            copies.add(zone.snapshot());
+        }
+        return copies;
+    }
+
+    // Frame times of the last HISTORY frames, oldest first
+    public static synchronized float[] getFrameHistoryMs() {
+        float[] copy = new float[HISTORY];
+        copyHistory(frameHistoryMs, copy);
+        return copy;
+    }
+
+    // Unrolls a ring buffer whose oldest entry is at cursor
+    private static void copyHistory(float[] ring, float[] dst) {
+        System.arraycopy(ring, cursor, dst, 0, HISTORY - cursor);
+        System.arraycopy(ring, 0, dst, HISTORY - cursor, cursor);
+    }
+
+    public static synchronized void startCapture() {
+        capturing    = true;
+        captureStart = System.nanoTime();
+        eventCount   = 0;
+    }
+
+    public static synchronized boolean isCapturing() {
+        return capturing;
+    }
+
+    // Ends the capture and writes its events as a Chrome trace (JSON object format, times in us)
+    public static synchronized void stopCapture(Path file) throws IOException {
+        capturing = false;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\"traceEvents\":[\n");
+            for (int i = 0; i < eventCount; i++) {
+                out.write(String.format(Locale.ROOT, "{\"name\":\"%s\",\"ph\":\"X\",\"pid\":1,\"tid\":%d,\"ts\":%.3f,\"dur\":%.3f}%s\n",
+                        escape(eventNames[i]), eventThreads[i],
+                        (eventStarts[i] - captureStart) / 1e3, (eventEnds[i] - eventStarts[i]) / 1e3,
+                        i + 1 < eventCount ? "," : ""));
+            }
+            out.write("],\"displayTimeUnit\":\"ms\"}\n");
+        }
+        Arrays.fill(eventNames, 0, eventCount, null);
+        eventCount = 0;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,127 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Packs rectangles into a fixed-size area with the skyline bottom-left heuristic:
+// the top edge of everything placed so far is kept as a list of horizontal segments,
+// and each new rectangle goes where its top ends up lowest.
+public class SkylinePacker {
+    private static class Segment {
+        int x, y, width;
+
+        Segment(int x, int y, int width) {
+            this.x     = x;
+            this.y     = y;
+            this.width = width;
+        }
+    }
+
+    private final int width, height;
+    private final List<Segment> skyline;
+    private int usedHeight;
+
+    public SkylinePacker(int width, int height) {
+        this.width      = width;
+        this.height     = height;
+        this.skyline    = new ArrayList<>();
+        this.usedHeight = 0;
+        skyline.add(new Segment(0, 0, width));
+    }
+
+    // Places a w x h rectangle and returns its {x, y}, or null when it does not fit
+    public int[] insert(int w, int h) {
+        int bestIndex = -1;
+        int bestX     = 0;
+        int bestY     = 0;
+        int bestTop   = Integer.MAX_VALUE;
+        int bestWidth = Integer.MAX_VALUE;
+
+        for (int i = 0; i < skyline.size(); i++) {
+            int y = fitAt(i, w, h);
+            if (y < 0) {
+                continue;
+            }
+
+            Segment seg = skyline.get(i);
+            if (y + h < bestTop || (y + h == bestTop && seg.width < bestWidth)) {
+                bestIndex = i;
+                bestX     = seg.x;
+                bestY     = y;
+                bestTop   = y + h;
+                bestWidth = seg.width;
+            }
+        }
+
+        if (bestIndex < 0) {
+            return null;
+        }
+
+        place(bestIndex, bestX, bestY, w, h);
+        usedHeight = Math.max(usedHeight, bestY + h);
+        return new int[]{bestX, bestY};
+    }
+
+    // Lowest y a rectangle starting at segment i can sit at, or -1 if it would leave the area
+    private int fitAt(int i, int w, int h) {
+        Segment first = skyline.get(i);
+        if (first.x + w > width) {
+            return -1;
+        }
+
+        int y         = 0;
+        int remaining = w;
+        while (remaining > 0) {
+            Segment seg = skyline.get(i);
+            y = Math.max(y, seg.y);
+            if (y + h > height) {
+                return -1;
+            }
+            remaining -= seg.width;
+            i++;
+        }
+        return y;
+    }
+
+    private void place(int index, int x, int y, int w, int h) {
+        skyline.add(index, new Segment(x, y + h, w));
+
+        // Shrink or drop the segments now covered by the new one
+        int right = x + w;
+        for (int i = index + 1; i < skyline.size(); ) {
+            Segment seg = skyline.get(i);
+            if (seg.x >= right) {
+                break;
+            }
+
+            int overlap = right - seg.x;
+            if (overlap >= seg.width) {
+                skyline.remove(i);
+            } else {
+                seg.x     += overlap;
+                seg.width -= overlap;
+                break;
+            }
+        }
+
+        // Merge neighbours at the same height
+        for (int i = 0; i < skyline.size() - 1; ) {
+            Segment a = skyline.get(i);
+            Segment b = skyline.get(i + 1);
+            if (a.y == b.y) {
+                a.width += b.width;
+                skyline.remove(i + 1);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // Height of the tallest column used so far
+    public int getUsedHeight() {
+        return usedHeight;
+    }
+
+    public int getWidth()  { return this.width; }
+    public int getHeight() { return this.height; }
+}
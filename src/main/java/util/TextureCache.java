@@ -0,0 +1,139 @@
+package util;
+
+import render.Texture;
+import render.TextureBaker;
+import render.TextureLoader;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// Textures by absolute path, counted by the handles given out for them. A texture nobody holds
+// a handle to stays cached, so it is free to get again, until the textures' GPU memory goes
+// over budget; then the least recently used unreferenced ones are deleted. GL thread only.
+public class TextureCache {
+
+    // One reference to a cached texture. release() gives it back; further calls do nothing.
+    public static class Handle {
+        private final Entry entry;
+        private boolean released = false;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        public Texture texture() {
+            assert !released : "Error: (TextureCache) Handle used after release";
+            return entry.texture;
+        }
+
+        public void release() {
+            if (!released) {
+                released = true;
+                entry.cache.release(entry);
+            }
+        }
+    }
+
+    private static class Entry {
+        final TextureCache cache;
+        final Texture texture;
+        int refs = 0;
+
+        Entry(TextureCache cache, Texture texture) {
+            this.cache   = cache;
+            this.texture = texture;
+        }
+    }
+
+    // Access order: iteration starts at the least recently used texture
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long budgetBytes;
+    // Synchronous loads go through the baked cache when set
+    private TextureBaker baker;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public TextureCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    // Decodes a missing texture right away, or in the background with a placeholder meanwhile
+    public Handle acquire(String key, String resourceName, boolean async) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+            if (!async && !entry.texture.isLoaded()) {
+                TextureLoader.finish(entry.texture);
+            }
+        } else {
+            misses++;
+            Texture texture;
+            if (async) {
+                texture = TextureLoader.load(resourceName);
+            } else if (baker != null) {
+                texture = baker.load(resourceName);
+            } else {
+                texture = new Texture(resourceName);
+            }
+            entry = new Entry(this, texture);
+            entries.put(key, entry);
+        }
+        entry.refs++;
+        Handle handle = new Handle(entry);
+        evictOverBudget();
+        return handle;
+    }
+
+    private void release(Entry entry) {
+        assert entry.refs > 0 : "Error: (TextureCache) Released more often than acquired";
+        entry.refs--;
+        if (entry.refs == 0) {
+            evictOverBudget();
+        }
+    }
+
+    // Deletes unreferenced textures, least recently used first, until usage fits the budget.
+    // Textures still loading are kept: their upload has yet to happen.
+    private void evictOverBudget() {
+        long usage = getGpuBytes();
+        Iterator<Entry> it = entries.values().iterator();
+        while (usage > budgetBytes && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.refs == 0 && entry.texture.isLoaded()) {
+                usage -= entry.texture.getSizeBytes();
+                entry.texture.delete();
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    public void setBaker(TextureBaker baker) {
+        this.baker = baker;
+    }
+
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evictOverBudget();
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    // Sizes are read from the textures, as asynchronously loaded ones only know theirs once uploaded
+    public long getGpuBytes() {
+        long bytes = 0;
+        for (Entry entry : entries.values()) {
+            bytes += entry.texture.getSizeBytes();
+        }
+        return bytes;
+    }
+
+    public int size()           { return entries.size(); }
+    public long getHits()       { return hits; }
+    public long getMisses()     { return misses; }
+    public long getEvictions()  { return evictions; }
+}